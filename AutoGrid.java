@@ -1,152 +1,262 @@
-import processing.core.PApplet;
+import java.awt.Color;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.io.InputStream;
+import java.util.SplittableRandom;
+import processing.core.PApplet;
+import processing.core.PGraphics;
 
-//an entire screen state, which automatically cycles grid parameters
+//an entire screen state, which automatically cycles grid parameters. It is
+//made of layers of grids, each of any type. The first layer stays still in the
+//middle of the screen and the others move around under it, with their colours
+//blended where they cross (see AUTO_COMPOSITOR_MODE). Everything random
+//about it comes from a seed, and every parameter is a closed form function of
+//time, so a whole show is just its seed, screen size and layer types - see
+//to_show - and can be jumped to any frame straight away
 public class AutoGrid implements GridConstants {
-  private GridDrawer grid;
   private static PApplet parent;
 
   public static void init(PApplet app) {
     parent = app;
   }
 
-  //it uses SineVariables to vary grid parameters. These are objects that vary
-  //between values in the form of a sinewave.
-  private SineVariable cv, sv, xv, yv, thv, gapv, strokev;
-  private int gridtype;
+  //it uses a SineBank to vary grid parameters. These are values that vary
+  //between values in the form of a sinewave. Every layer has a wave for each
+  //of its parameters, added in this order, so the wave for parameter p of
+  //layer k is at k * PARAMS + p
+  private static final int HUE = 0, X = 1, Y = 2, TH = 3, GAP = 4, STROKE = 5, PARAMS = 6;
+  private SineBank waves;
+  private int[] types;
+  private int layers;
+  private long seed;
+  //the screen the show was made for
+  private int width, height;
+  //the frame the show is at
+  private double frame;
+  //the scene drawn each frame, which is filled in again rather than made anew
+  private Scene scene;
+  //what draw(set) blends layers with, made the first time it is needed
+  private PGraphics layer;
+  private GridDrawer[] layer_set;
+  private float[][] blend;
+
+  //a show of a layer of each type given, for a screen of some size
+  public AutoGrid(int[] types, long seed, int width, int height) {
+    this.seed = seed;
+    this.width = width;
+    this.height = height;
+    waves = new SineBank();
+    this.types = new int[Math.max(1, types.length)];
+    for (int type : types) {
+      add_layer(type);
+    }
+    scene = new Scene(width, height);
+  }
+
+  //a layer of each type given, with a new seed
+  public AutoGrid(int[] types) {
+    this(types, new SplittableRandom().nextLong(), parent.width, parent.height);
+  }
 
-  //note the heavy use of constants - many default parameters etc here can be
-  //customised in GridConstants.java
+  //AUTO_LAYERS layers of the same type
   public AutoGrid(int gridtype) {
-    this.gridtype = gridtype;
-    grid = GridDrawer.get_grid(gridtype);
+    this(filled(gridtype));
+  }
+
+  private static int[] filled(int gridtype) {
+    int[] types = new int[AUTO_LAYERS];
+    Arrays.fill(types, gridtype);
+    return types;
+  }
+
+  //a random number between two others, like processing's random
+  private static float random(SplittableRandom rnd, float low, float high) {
+    return low + (high - low) * (float)rnd.nextDouble();
+  }
+
+  //add a wave starting somewhere random, with a random speed if none is given
+  private void add_wave(SplittableRandom rnd, float min, float max, float speed) {
+    waves.add(min, max, speed, random(rnd, 0, TWO_PI));
+  }
+
+  private void add_wave(SplittableRandom rnd, float min, float max) {
+    add_wave(rnd, min, max, random(rnd, -SINE_SPEED_DEFAULT, SINE_SPEED_DEFAULT));
+  }
+
+  //add a layer on top. The first layer is stationary, with only its colour
+  //changing, and the rest move. Each layer has its own random numbers worked
+  //out from the seed and its place, so adding a layer leaves the others as
+  //they were. note the heavy use of constants - many default parameters etc
+  //here can be customised in GridConstants.java
+  public void add_layer(int gridtype) {
+    if (layers == types.length) {
+      types = Arrays.copyOf(types, layers * 2);
+    }
+    types[layers] = gridtype;
+    //the golden ratio step splitmix uses, to spread out layers' seeds
+    SplittableRandom rnd = new SplittableRandom(seed + layers * 0x9e3779b97f4a7c15L);
+    add_wave(rnd, random(rnd, AUTO_GENERIC_COLOUR_MIN_RANGE_MIN, AUTO_GENERIC_COLOUR_MIN_RANGE_MAX),
+      random(rnd, AUTO_GENERIC_COLOUR_MAX_RANGE_MIN, AUTO_GENERIC_COLOUR_MAX_RANGE_MAX));
+    if (layers == 0) {
+      float gap = gap_default(gridtype);
+      add_wave(rnd, width / 2, width / 2, 0);
+      add_wave(rnd, height / 2, height / 2, 0);
+      add_wave(rnd, 0, 0, 0);
+      add_wave(rnd, gap, gap, 0);
+      add_wave(rnd, AUTO_GENERIC_STROKE, AUTO_GENERIC_STROKE, 0);
+      layers++;
+      return;
+    }
 
-    cv = new SineVariable(parent.random(AUTO_GENERIC_COLOUR_MIN_RANGE_MIN, AUTO_GENERIC_COLOUR_MIN_RANGE_MAX), 
-      parent.random(AUTO_GENERIC_COLOUR_MAX_RANGE_MIN, AUTO_GENERIC_COLOUR_MAX_RANGE_MAX));
-    sv = new SineVariable(parent.random(AUTO_GENERIC_COLOUR_MIN_RANGE_MIN, AUTO_GENERIC_COLOUR_MIN_RANGE_MAX), 
-      parent.random(AUTO_GENERIC_COLOUR_MAX_RANGE_MIN, AUTO_GENERIC_COLOUR_MAX_RANGE_MAX));
-    thv = new SineVariable(parent.random(AUTO_GENERIC_ROTATION_MAX), -parent.random(AUTO_GENERIC_ROTATION_MAX));
-    strokev = new SineVariable(parent.random(AUTO_GENERIC_STROKE - 1, AUTO_GENERIC_STROKE), 
-      parent.random(AUTO_GENERIC_STROKE, AUTO_GENERIC_STROKE + 1));
+    if (gridtype == TRIANGLERADIAL || gridtype == RADIALGRID) {
+      add_wave(rnd, random(rnd, width / 2 - AUTO_RADIAL_MAX_DIST_FROM_ORIGIN, width / 2),
+        random(rnd, width / 2, width / 2 + AUTO_RADIAL_MAX_DIST_FROM_ORIGIN));
+      add_wave(rnd, random(rnd, height / 2 - AUTO_RADIAL_MAX_DIST_FROM_ORIGIN, height / 2),
+        random(rnd, height / 2, height / 2 + AUTO_RADIAL_MAX_DIST_FROM_ORIGIN));
+    } else {
+      add_wave(rnd, random(rnd, width * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX),
+        width * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN)),
+        random(rnd, width * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN,
+        width * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX));
+      add_wave(rnd, random(rnd, height * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX),
+        height * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN)),
+        random(rnd, height * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN,
+        height * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX));
+    }
+    add_wave(rnd, random(rnd, 0, AUTO_GENERIC_ROTATION_MAX), -random(rnd, 0, AUTO_GENERIC_ROTATION_MAX));
 
+    float gap = gap_default(gridtype);
     if (gridtype == TRIANGLERADIAL || gridtype == RADIALGRID) {
-      xv = new SineVariable(parent.random(parent.width / 2 - AUTO_RADIAL_MAX_DIST_FROM_ORIGIN, parent.width / 2), 
-        parent.random(parent.width / 2, parent.width / 2 + AUTO_RADIAL_MAX_DIST_FROM_ORIGIN));
-      yv = new SineVariable(parent.random(parent.height / 2 - AUTO_RADIAL_MAX_DIST_FROM_ORIGIN, parent.height / 2), 
-        parent.random(parent.height / 2, parent.height / 2 + AUTO_RADIAL_MAX_DIST_FROM_ORIGIN));
+      add_wave(rnd, gap, gap, 0);
     } else {
-      xv = new SineVariable(parent.random(parent.width * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX), 
-        parent.width * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN)), 
-        parent.random(parent.width * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN, 
-        parent.width * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX));
-      yv = new SineVariable(parent.random(parent.height * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX), 
-        parent.height * (1 - AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN)), 
-        parent.random(parent.height * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MIN, 
-        parent.height * AUTO_GENERIC_MAX_FACTOR_DIST_FROM_ORIGIN_RANGE_MAX));
+      add_wave(rnd, random(rnd, gap - 3, gap), random(rnd, gap, gap + 3));
     }
+    add_wave(rnd, random(rnd, AUTO_GENERIC_STROKE - 1, AUTO_GENERIC_STROKE),
+      random(rnd, AUTO_GENERIC_STROKE, AUTO_GENERIC_STROKE + 1));
+    layers++;
+  }
 
+  //the gap size a type of grid looks best at in auto mode
+  private static float gap_default(int gridtype) {
     if (gridtype == TRIANGLERADIAL || gridtype == RADIALGRID) {
-      gapv = new SineVariable(AUTO_RADIAL_GAP_SIZE_DEFAULT, AUTO_RADIAL_GAP_SIZE_DEFAULT, 0);
+      return AUTO_RADIAL_GAP_SIZE_DEFAULT;
     } else if (gridtype == TRIANGLEGRID) {
-      gapv = new SineVariable(parent.random(AUTO_TRIANGLE_GAP_SIZE_DEFAULT - 3, AUTO_TRIANGLE_GAP_SIZE_DEFAULT), 
-        parent.random(AUTO_TRIANGLE_GAP_SIZE_DEFAULT, AUTO_TRIANGLE_GAP_SIZE_DEFAULT + 3));
+      return AUTO_TRIANGLE_GAP_SIZE_DEFAULT;
 
       //the other class of grids which use units
     } else if (gridtype >= HEXAGONALGRID || gridtype != LINEGRID) {
-      gapv = new SineVariable(parent.random(AUTO_UNIT_GRID_GAP_SIZE_DEFAULT - 3, AUTO_UNIT_GRID_GAP_SIZE_DEFAULT), 
-        parent.random(AUTO_UNIT_GRID_GAP_SIZE_DEFAULT, AUTO_UNIT_GRID_GAP_SIZE_DEFAULT + 3));
+      return AUTO_UNIT_GRID_GAP_SIZE_DEFAULT;
     } else {
-      gapv = new SineVariable(parent.random(AUTO_GENERIC_GAP_SIZE_DEFAULT - 3, AUTO_GENERIC_GAP_SIZE_DEFAULT), 
-        parent.random(AUTO_GENERIC_GAP_SIZE_DEFAULT, AUTO_GENERIC_GAP_SIZE_DEFAULT + 3));
+      return AUTO_GENERIC_GAP_SIZE_DEFAULT;
     }
   }
 
-  //serialise the grids to a string
-  private String serialise_grid() {
-    int c = parent.color(cv.value() % 255, 255, 255);
-    int s = parent.color(sv.value() % 255, 255, 255);
-    float x = xv.value();
-    float y = yv.value();
-    float th = thv.value();
-    float gap = gapv.value();
-    float stroke = strokev.value();
+  public int get_layers() {
+    return layers;
+  }
 
-    float x2, y2, th2, gap2, stroke2;
-    x2 = parent.width / 2;
-    y2 = parent.height / 2;
-    th2 = 0;
-    stroke2 = AUTO_GENERIC_STROKE;
+  public int get_width() {
+    return width;
+  }
 
-    if (gridtype == TRIANGLERADIAL || gridtype == RADIALGRID) {
-      gap2 = AUTO_RADIAL_GAP_SIZE_DEFAULT;
-    } else if (gridtype == TRIANGLEGRID) {
-      gap2 = AUTO_TRIANGLE_GAP_SIZE_DEFAULT;
-    } else if (gridtype >= HEXAGONALGRID || gridtype != LINEGRID) {
-      gap2 = AUTO_UNIT_GRID_GAP_SIZE_DEFAULT;
-    } else {
-      gap2 = AUTO_GENERIC_GAP_SIZE_DEFAULT;
-    }
+  public int get_height() {
+    return height;
+  }
 
-    return String.format(
-      "type %s\nr %f\ng %f\nb %f\nx %f\ny %f\nrotation %f\ngap_size %f\nstroke_width %f\nradius %f\n"
-      + "\ntype %s\nr %f\ng %f\nb %f\nx %f\ny %f\nrotation %f\ngap_size %f\nstroke_width %f\nradius %f\n", 
-      grid.getClass().getSimpleName(), parent.red(s), parent.green(s), parent.blue(s), x, y, th, gap, stroke, GridDrawer.get_radius(x, y), 
-      grid.getClass().getSimpleName(), parent.red(c), parent.green(c), parent.blue(c), x2, y2, th2, gap2, stroke2, GridDrawer.get_radius(x2, y2));
+  public long get_seed() {
+    return seed;
   }
 
-  //use serialise_grid() and add in further screen parameters to completely
-  //serialise
-  private String[] serialise_to_string() {
-    String[] ser = new String[] {String.format("screen_width %d\nscreen_height %d\n", parent.width, parent.height), 
-      serialise_grid()};
-    return ser;
+  public double get_frame() {
+    return frame;
   }
 
-  //use serialise_to_string to write to file. can also save a tiff image and a
-  //ps file containing the grids. the filename used is a simple timestamp with
-  //a prefix and file extension
-  public void serialise_to_file(boolean sav_img) {
+  //jump to any frame of the show, which can be a fraction of a frame
+  public void seek(double frame) {
+    this.frame = frame;
+    waves.set_time(frame);
+  }
+
+  //jump to a time in the show, in seconds from the start
+  public void seek_seconds(double seconds) {
+    seek(seconds * AUTO_FRAMES_PER_SECOND);
+  }
+
+  //the show as lines of text, in the same key value format as serialised
+  //grids, from which from_show can make it again at the same frame
+  public String[] to_show() {
+    StringBuilder types = new StringBuilder();
+    for (int k = 0; k < layers; k++) {
+      types.append(k == 0 ? "" : " ").append(GridDrawer.get_name(this.types[k]));
+    }
+    return new String[] {String.format("seed %d\nscreen_width %d\nscreen_height %d\nframe %s\nlayers %s\n",
+      seed, width, height, Double.toString(frame), types)};
+  }
+
+  //save the show to a file in data, named with a timestamp, to be played
+  //again from the same frame
+  public void save_show() {
     String stamp = new SimpleDateFormat("yyyy_MM_dd_HHmmss").format(Calendar.getInstance().getTime());
+    String name = String.format("data/show_%s.txt", stamp);
+    parent.saveStrings(parent.sketchPath(name), to_show());
+    parent.println(String.format("saved show to %s", name));
+  }
 
-    String filename = "data/auto_" + stamp + ".txt";
-    //uses processing's builtin saveStrings to save strings. it's very
-    //convenient
-    parent.saveStrings(filename, serialise_to_string());
-    parent.println(String.format("saving as %s", filename));
-    if (sav_img) {
-      String img_name = "data/aimg_" + stamp + ".tiff";
-      //processing function to save what's on the screen to a file
-      parent.save(img_name);
-
-      String psname = "data/aimg_" + stamp + ".ps";
-
-      //for the ps file, it has to run the script convert.py. This required
-      //pipes to be used, so the command is actually calling sh, with an inline
-      //script to execute, which has pipes in. to get absolute paths for each
-      //file used, processing's sketchPath is used.
-      String[] cmd = {
-        "/bin/sh", 
-        "-c", 
-        String.format("cat %s | /usr/bin/env python3 %s -abs -f %s > %s", 
-        parent.sketchPath(filename), parent.sketchPath("serial_conversion/convert.py"), 
-        parent.sketchPath("serial_conversion/grid_template.ps"), parent.sketchPath(psname))
-      };
-      parent.printArray(cmd);
-      try {
-        Process p = Runtime.getRuntime().exec(cmd);
-        //was used in debugging to see what errors were happening
-        InputStream s = p.getErrorStream();
-         for (int i = 0; i < 400; i++) {
-         parent.print(Character.toString((char)p.getErrorStream().read()));
-         }
-        p.waitFor();
-      } 
-      catch (Exception ex) {
-        parent.println("ERROR HAPPENED IN WRITING PS FILE");
+  //make a show again from the lines written by to_show. gives null if they
+  //aren't a show
+  public static AutoGrid from_show(String[] lines) {
+    if (lines == null) {
+      return null;
+    }
+    Long seed = null;
+    int width = parent.width, height = parent.height;
+    double frame = 0;
+    int[] types = null;
+    for (String line : lines) {
+      for (String l : line.split("\n")) {
+        String[] kv = l.trim().split("\\s+");
+        if (kv.length < 2) {
+          continue;
+        }
+        try {
+          if (kv[0].equals("seed")) {
+            seed = Long.parseLong(kv[1]);
+          } else if (kv[0].equals("screen_width")) {
+            width = Integer.parseInt(kv[1]);
+          } else if (kv[0].equals("screen_height")) {
+            height = Integer.parseInt(kv[1]);
+          } else if (kv[0].equals("frame")) {
+            frame = Double.parseDouble(kv[1]);
+          } else if (kv[0].equals("layers")) {
+            types = new int[kv.length - 1];
+            for (int k = 0; k < types.length; k++) {
+              types[k] = GridDrawer.get_type(kv[k + 1]);
+              if (types[k] < 0) {
+                return null;
+              }
+            }
+          }
+        }
+        catch (NumberFormatException ex) {
+          return null;
+        }
       }
     }
+    if (seed == null || types == null || types.length == 0) {
+      return null;
+    }
+    AutoGrid ag = new AutoGrid(types, seed, width, height);
+    ag.seek(frame);
+    return ag;
+  }
+
+  //use serialise_to_string to write to file. can also save a png image and
+  //ps and svg files containing the grids. the SnapshotQueue writes them in
+  //the background, so the animation carries on. the filename used is a simple
+  //timestamp with a prefix and file extension
+  public void serialise_to_file(boolean sav_img) {
+    Scene scene = to_scene();
+    SnapshotQueue.submit("auto", "aimg", scene.to_strings(), scene, sav_img);
   }
 
   //defaults sav_img to false. this might be sloppy but it's nice and Pythonic
@@ -154,53 +264,79 @@ public class AutoGrid implements GridConstants {
     serialise_to_file(false);
   }
 
-  //update all sliders
+  //move on a frame
   public void update() {
-    cv.update();
-    sv.update();
-    xv.update();
-    yv.update();
-    thv.update();
-    gapv.update();
-    strokev.update();
+    seek(frame + 1);
   }
 
   //draw grids
   public void draw() {
-    //set colormode to HSB
-    parent.colorMode(HSB, 255, 255, 255);
-    //get values from SineVariables
-    int c = parent.color(cv.value() % 255, 255, 255);
-    int s = parent.color(sv.value() % 255, 255, 255);
-    float x = xv.value();
-    float y = yv.value();
-    float th = thv.value();
-    float gap = gapv.value();
-    float stroke = strokev.value();
-
-    //draw the first grid
-    grid.draw(x, y, th, gap, stroke, c);
-
-    //draw the stationary grid, making adjustments based on what type of grid
-    //it is
-    if (gridtype == TRIANGLERADIAL || gridtype == RADIALGRID) {
-      grid.draw(parent.width / 2, parent.height / 2, 0, AUTO_RADIAL_GAP_SIZE_DEFAULT, 5, s);
-    } else if (gridtype == TRIANGLEGRID) {
-      grid.draw(parent.width / 2, parent.height / 2, 0, AUTO_TRIANGLE_GAP_SIZE_DEFAULT, 5, s);
-    } else if (gridtype >= HEXAGONALGRID || gridtype != LINEGRID) {
-      grid.draw(parent.width / 2, parent.height / 2, 0, AUTO_UNIT_GRID_GAP_SIZE_DEFAULT, 5, s);
-    } else {
-      grid.draw(parent.width / 2, parent.height / 2, 0, AUTO_GENERIC_GAP_SIZE_DEFAULT, 5, s);
+    fill_scene(scene);
+    //the moire preview shows the beats of the stationary layer against the
+    //others
+    if (MoirePreview.enabled && MoirePreview.draw(scene, scene.size() - 1)) {
+      return;
+    }
+    if (Compositor.is_active()) {
+      Compositor.draw(scene);
+      return;
+    }
+    for (int i = 0; i < scene.size(); i++) {
+      GridDrawer.get_grid(scene.type[i]).draw(scene.x[i], scene.y[i], scene.th[i], scene.gap[i], scene.stroke[i], scene.c[i]);
+    }
+  }
+
+  //draw grids with some other set, such as one of the ShowRender's, blended
+  //in AUTO_COMPOSITOR_MODE. This can't use the Compositor's threads and
+  //layers, which are for the screen, so each layer is drawn in turn into a
+  //layer of this show's own and blended with the Compositor's blend_layers.
+  //The blended frame then replaces whatever the set's graphics held
+  public void draw(GridDrawer[] set) {
+    fill_scene(scene);
+    if (AUTO_COMPOSITOR_MODE == Compositor.OVER) {
+      scene.draw(set);
+      return;
+    }
+    PGraphics g = GridDrawer.get_graphics(set);
+    int n = g.width * g.height;
+    if (layer == null) {
+      layer = parent.createGraphics(g.width, g.height);
+      layer_set = GridDrawer.make_screen_set(layer, width, height);
+      blend = new float[4][n];
+    }
+    for (int k = 0; k < scene.size(); k++) {
+      layer.beginDraw();
+      layer.clear();
+      layer.scale(g.width / (float)width);
+      scene.draw(layer_set, k, k + 1);
+      layer.endDraw();
+      layer.loadPixels();
+      Compositor.blend_layers(AUTO_COMPOSITOR_MODE, new int[][] {layer.pixels}, k == 0 ? null : blend, blend, 0, n);
     }
+    g.loadPixels();
+    Compositor.finish(AUTO_COMPOSITOR_MODE, blend, g.pixels, 0, n);
+    g.updatePixels();
+  }
 
-    //at this point, two opaque grids have been drawn. this means that at
-    //intersections the second grid takes precedence. I want the grids to blend
-    //at intersections, so at this point I draw the first grid again, but with
-    //an alpha value of one half. This doesn't affect non intersecting parts of
-    //the first grid, but averages out colour at intersections
+  //the grids that are drawn, as a scene of their own
+  public Scene to_scene() {
+    Scene scene = new Scene(width, height);
+    fill_scene(scene);
+    return scene;
+  }
 
-    c = parent.color(cv.value() % 255, 255, 255, 255 / 2);
-    
-    grid.draw(x, y, th, gap, stroke, c);
+  //put a grid for each layer into a scene, bottom first. The moving layers
+  //go under the stationary one, which is drawn on top. each layer is only
+  //drawn once, and opaque, so that they can all be batched. Where they cross
+  //the Compositor blends them (in AUTO_COMPOSITOR_MODE to start with). the
+  //hue is turned into a colour here rather than by the PApplet, so that shows
+  //can be drawn on several threads at once
+  private void fill_scene(Scene scene) {
+    scene.clear();
+    for (int k = 1; k <= layers; k++) {
+      int i = (k % layers) * PARAMS;
+      int c = 0xff000000 | Color.HSBtoRGB(waves.get(i + HUE) % 255 / 255, 1, 1);
+      scene.add(types[k % layers], waves.get(i + X), waves.get(i + Y), waves.get(i + TH), waves.get(i + GAP), waves.get(i + STROKE), c);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+//a command line program to render serialised scenes (the .txt files written
+//by pressing f) to png images, without a display. It uses the same grids as
+//the sketch, and renders files in parallel, each thread with its own set of
+//grids. It can be run from the built sketch as
+//  java -cp core.jar:. BatchRender [-w width] [-t threads] [-o dir] files...
+//where directories given are searched for .txt files, -w sets the width of
+//the images (the height keeps the scene's aspect ratio), -t the number of
+//threads and -o where the images go (by default, next to each scene).
+public class BatchRender implements GridConstants {
+  private static PApplet app;
+  private static int width = 0;
+  private static File out_dir = null;
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    int threads = Runtime.getRuntime().availableProcessors();
+    ArrayList<File> files = new ArrayList<File>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-w") && i + 1 < args.length) {
+        width = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-o") && i + 1 < args.length) {
+        out_dir = new File(args[++i]);
+        out_dir.mkdirs();
+      } else {
+        add_files(new File(args[i]), files);
+      }
+    }
+    if (files.isEmpty()) {
+      System.err.println("usage: BatchRender [-w width] [-t threads] [-o dir] files...");
+      System.exit(1);
+    }
+
+    //the grids need a PApplet, but it is never run. It still needs graphics
+    //of its own, for grids that are drawn through it rather than a set
+    app = new PApplet();
+    app.g = app.createGraphics(app.width, app.height, JAVA2D);
+    GridDrawer.init(app);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ArrayList<Future<Object>> results = new ArrayList<Future<Object>>();
+    long start = System.nanoTime();
+    for (final File f : files) {
+      results.add(pool.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          render(f);
+          return null;
+        }
+      }));
+    }
+    int failed = 0;
+    for (int i = 0; i < files.size(); i++) {
+      try {
+        results.get(i).get();
+      } 
+      catch (Exception ex) {
+        failed++;
+        System.err.println(String.format("failed to render %s: %s", files.get(i), ex.getCause()));
+      }
+    }
+    pool.shutdown();
+    float secs = (System.nanoTime() - start) / 1e9f;
+    int done = files.size() - failed;
+    System.out.println(String.format("rendered %d files (%d failed) in %.2fs on %d threads, %.1f files per second", 
+      done, failed, secs, threads, done / secs));
+  }
+
+  //add a file, or the .txt files in a directory
+  private static void add_files(File f, ArrayList<File> files) {
+    if (f.isDirectory()) {
+      File[] children = f.listFiles();
+      //listFiles gives null if the directory can't be read
+      if (children == null) {
+        System.err.println(String.format("could not read directory %s", f));
+        return;
+      }
+      Arrays.sort(children);
+      for (File c : children) {
+        if (c.isFile() && c.getName().endsWith(".txt")) {
+          files.add(c);
+        }
+      }
+    } else {
+      files.add(f);
+    }
+  }
+
+  //render one scene to a png next to it, or in the output directory
+  private static void render(File f) throws Exception {
+    Scene scene = Scene.parse(PApplet.loadStrings(f));
+    int w = width > 0 ? width : scene.width;
+    float scale = w / (float)scene.width;
+    int h = Math.round(scene.height * scale);
+
+    PGraphics pg = app.createGraphics(w, h, JAVA2D);
+    GridDrawer[] set = GridDrawer.make_screen_set(pg, scene.width, scene.height);
+    pg.beginDraw();
+    pg.background(0);
+    pg.scale(scale);
+    scene.draw(set);
+    pg.endDraw();
+
+    pg.loadPixels();
+    BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    img.setRGB(0, 0, w, h, pg.pixels, 0, w);
+    String name = f.getName().replaceAll("\\.txt$", "") + ".png";
+    File dir = out_dir != null ? out_dir : f.getAbsoluteFile().getParentFile();
+    ImageIO.write(img, "png", new File(dir, name));
+    pg.dispose();
+  }
+}
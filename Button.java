@@ -1,9 +1,13 @@
-import processing.core.PVector;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static processing.core.PApplet.dist;
+import static processing.core.PApplet.mag;
 
 //a button, which calls a certain method when clicked.
 public class Button extends ClickUIElement implements GridConstants {
   private Action a; //action to call when button is pressed
-  private PVector loc, ofs; //positioning
+  private float loc_x, loc_y, ofs_x, ofs_y; //positioning
   private float th; //positioning and dimensions of the button
   private int c; //button colour
   private static final float r = BUTTON_RADIUS;
@@ -14,14 +18,17 @@ public class Button extends ClickUIElement implements GridConstants {
 
   //set position
   public void set_pos(float x, float y) {
-    loc.x = x;
-    loc.y = y;
+    loc_x = x;
+    loc_y = y;
+    place_handle();
   }
 
-  //set rotation, using some vector functionality
+  //set rotation, using some trigonometry
   public void set_rotation(float th) {
-    float m = ofs.mag();
-    ofs = PVector.fromAngle(th + this.th).mult(m);
+    float m = mag(ofs_x, ofs_y);
+    ofs_x = (float)cos(th + this.th) * m;
+    ofs_y = (float)sin(th + this.th) * m;
+    place_handle();
   }
 
   //button constructor, taking an action, a position, an offset from the
@@ -29,15 +36,23 @@ public class Button extends ClickUIElement implements GridConstants {
   public Button(Action a, float x, float y, float ox, float oy, int c) {
     super(c);
     this.a = a;
-    loc = new PVector(x, y);
-    ofs = new PVector(ox, oy);
-    this.th = ofs.heading();
+    loc_x = x;
+    loc_y = y;
+    ofs_x = ox;
+    ofs_y = oy;
+    this.th = (float)atan2(oy, ox);
     this.c = c;
+    place_handle();
+  }
+
+  //move where the button can be clicked to its circle
+  private void place_handle() {
+    place(loc_x + ofs_x, loc_y + ofs_y, r);
   }
 
   //simple calculation to determine if a position is in a circle
   boolean hovers(float x, float y) {
-    return new PVector(x, y).sub(PVector.add(loc, ofs)).mag() < r;
+    return dist(x, y, loc_x + ofs_x, loc_y + ofs_y) < r;
   }
 
   //call the action when clicked
@@ -49,7 +64,7 @@ public class Button extends ClickUIElement implements GridConstants {
   void draw_element() {
     parent.fill(c);
     parent.stroke(c);
-    parent.ellipse(loc.x + ofs.x, loc.y + ofs.y, r*2, r*2);
+    parent.ellipse(loc_x + ofs_x, loc_y + ofs_y, r*2, r*2);
     parent.noFill();
     parent.strokeWeight(3);
   }
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 import processing.core.PApplet;
 import processing.event.MouseEvent;
 
@@ -15,6 +16,15 @@ public abstract class ClickUIElement {
   private static ClickUIElement clicked_element;
   //static list of elements
   private static ArrayList<ClickUIElement> elements = new ArrayList<ClickUIElement>();
+  //a spatial hash of the elements, by the square cells of the screen their
+  //handles touch, so that a click only has to check the elements near it
+  private static HashMap<Long, ArrayList<ClickUIElement>> cells = new HashMap<Long, ArrayList<ClickUIElement>>();
+  //the order elements were made in. the first element in the list to hover
+  //is the one clicked, which is the one made first
+  private static int made = 0;
+  private int order;
+  //the cells the element touches
+  private int cx0 = 0, cy0 = 0, cx1 = -1, cy1 = -1;
 
   //abtract method to call when an arrow key is pressed on a selected element
   public abstract void move(int keyCode);
@@ -23,13 +33,25 @@ public abstract class ClickUIElement {
   public static void move_delta(int keyCode) {
     if (is_residue) {
       clicked_element.move(keyCode);
+      Redraw.mark();
     }
   }
 
+  //whether an element is being dragged
+  public static boolean is_dragging() {
+    return any_pressed;
+  }
+
+  //get the element that was last clicked, if there is one
+  public static ClickUIElement get_selected() {
+    return is_residue ? clicked_element : null;
+  }
+
   //initialiser
   public static void init(PApplet app) {
     parent = app;
     elements = new ArrayList<ClickUIElement>();
+    cells = new HashMap<Long, ArrayList<ClickUIElement>>();
     do_draw = true;
   }
 
@@ -46,9 +68,73 @@ public abstract class ClickUIElement {
       throw new Error("you haven't called init()");
     }
     removeMe = false;
+    order = made++;
     elements.add(this);
   }
 
+  //move the circle the element can be clicked in, which every element does
+  //whenever its handle moves. The element is only moved between cells if it
+  //touches different ones
+  protected void place(float x, float y, float r) {
+    int nx0 = cell(x - r), ny0 = cell(y - r), nx1 = cell(x + r), ny1 = cell(y + r);
+    if (nx0 == cx0 && ny0 == cy0 && nx1 == cx1 && ny1 == cy1) {
+      return;
+    }
+    unplace();
+    cx0 = nx0;
+    cy0 = ny0;
+    cx1 = nx1;
+    cy1 = ny1;
+    for (int i = cx0; i <= cx1; i++) {
+      for (int j = cy0; j <= cy1; j++) {
+        ArrayList<ClickUIElement> in = cells.get(key(i, j));
+        if (in == null) {
+          in = new ArrayList<ClickUIElement>(4);
+          cells.put(key(i, j), in);
+        }
+        in.add(this);
+      }
+    }
+  }
+
+  //take the element out of the cells it is in
+  private void unplace() {
+    for (int i = cx0; i <= cx1; i++) {
+      for (int j = cy0; j <= cy1; j++) {
+        ArrayList<ClickUIElement> in = cells.get(key(i, j));
+        in.remove(this);
+        if (in.isEmpty()) {
+          cells.remove(key(i, j));
+        }
+      }
+    }
+    cx1 = cx0 - 1;
+  }
+
+  private static int cell(float v) {
+    return (int)Math.floor(v / GridConstants.UI_HASH_CELL_SIZE);
+  }
+
+  private static long key(int i, int j) {
+    return ((long)i << 32) | (j & 0xffffffffL);
+  }
+
+  //find the element clicked at a point, which is the first one in the list
+  //which hovers over it, looking only in the point's cell. the GridBench uses
+  //this too to avoid clicking on buttons
+  static ClickUIElement find(float x, float y) {
+    ArrayList<ClickUIElement> in = cells.get(key(cell(x), cell(y)));
+    ClickUIElement first = null;
+    if (in != null) {
+      for (ClickUIElement e : in) {
+        if ((first == null || e.order < first.order) && e.hovers(x, y)) {
+          first = e;
+        }
+      }
+    }
+    return first;
+  }
+
   //destructor method
   public void kill() {
     removeMe = true;
@@ -71,6 +157,7 @@ public abstract class ClickUIElement {
         ClickUIElement e = elements.get(index);
         if (e.removeMe) {
           elements.remove(index);
+          e.unplace();
         } else {
           parent.stroke(e.c);
           e.draw_element();
@@ -105,25 +192,26 @@ public abstract class ClickUIElement {
     float y = event.getY();
     switch (event.getAction()) {
     case MouseEvent.PRESS:
-      for (ClickUIElement e : elements) {
-        if (e.hovers(x, y)) {
-          clicked_element = e;
-          e.click();
-          any_pressed = true;
-          is_residue = true;
-          break;
-        }
+      ClickUIElement e = find(x, y);
+      if (e != null) {
+        clicked_element = e;
+        e.click();
+        any_pressed = true;
+        is_residue = true;
+        Redraw.mark();
       }
       break;
     case MouseEvent.DRAG:
       if (any_pressed) {
         clicked_element.drag(x, y);
+        Redraw.mark();
       }
       break;
     case MouseEvent.RELEASE:
       if (any_pressed) {
         clicked_element.release();
         any_pressed = false;
+        Redraw.mark();
       }
       break;
     }
@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+//blends grids together properly. Normally grids are just drawn over each
+//other, so where they cross the top one wins. With a blend mode picked, each
+//grid of a scene is drawn once into a layer of its own and then combined
+//pixel by pixel into a running blend. There is only a layer for each thread,
+//so grids are drawn a round at a time, one on each thread, and then each
+//thread blends the round's layers into a band of rows. A layer is clear
+//where its grid isn't, so its alpha is how much of each pixel the grid
+//covers. The modes are
+//  average - where grids cross their colours are averaged
+//  add - colours add up, getting brighter where grids cross
+//  multiply - colours multiply where grids cross, like filters
+//  difference - where grids cross the difference of their colours is taken
+public class Compositor implements GridConstants {
+  private static PApplet parent;
+  public static final int OVER = 0, AVERAGE = 1, ADD = 2, MULTIPLY = 3, DIFFERENCE = 4;
+  private static final String[] NAMES = {"off", "average", "add", "multiply", "difference"};
+  public static int mode;
+  //a layer for each thread and the grids drawing to it, reused frame to frame
+  private static ArrayList<PGraphics> layers;
+  private static ArrayList<GridDrawer[]> sets;
+  //the blend so far of every pixel, as red, green and blue premultiplied by
+  //how much of the pixel is covered, and a fourth channel. That is how much
+  //is covered for multiply and difference, and how many grids' worth cover it
+  //for average. Channels go from 0 to 1. At four floats a pixel this is
+  //about 26MB at 1700x950, but it is the same however many grids there are
+  private static float[][] blend;
+  //like the LayerCache, the blend of the grids below the active one is kept
+  //between frames, along with those grids and the mode they were blended in.
+  //It is as big again, and only made once a grid is dragged while blending
+  private static float[][] kept;
+  private static Scene kept_scene;
+  private static int kept_count, kept_mode;
+  private static PImage out;
+  private static ExecutorService pool;
+  private static int threads;
+  //time taken drawing and combining layers, smoothed over a few frames
+  private static float millis;
+
+  public static void init(PApplet app) {
+    parent = app;
+    mode = COMPOSITOR_MODE;
+    layers = new ArrayList<PGraphics>();
+    sets = new ArrayList<GridDrawer[]>();
+    //the blends are only made once something is blended, as they are big
+    blend = null;
+    kept = null;
+    kept_scene = null;
+    out = parent.createImage(parent.width, parent.height, RGB);
+    millis = 0;
+    if (pool == null) {
+      threads = Runtime.getRuntime().availableProcessors();
+      //daemon threads, so that they don't keep the sketch running
+      pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "compositor");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+  }
+
+  //whether grids should be blended rather than drawn over each other. the
+  //TileRenderer draws its own tiles, so it is left to it while it records
+  public static boolean is_active() {
+    return mode != OVER && !TileRenderer.is_recording();
+  }
+
+  public static void cycle_mode() {
+    mode = (mode + 1) % NAMES.length;
+  }
+
+  //blend every grid of a scene and put the result on screen
+  public static void draw(Scene scene) {
+    draw(scene, 0);
+  }
+
+  //blend every grid of a scene and put the result on screen, where the first
+  //keep grids are expected to stay the same from frame to frame. Their blend
+  //is kept, and only worked out again if they do change
+  public static void draw(Scene scene, int keep) {
+    long start = System.nanoTime();
+    int n = scene.size();
+    //no more layers than there are threads, or grids to draw into them
+    int needed = Math.min(threads, n);
+    while (layers.size() < needed) {
+      PGraphics layer = parent.createGraphics(parent.width, parent.height);
+      layers.add(layer);
+      sets.add(GridDrawer.make_screen_set(layer, parent.width, parent.height));
+    }
+    while (layers.size() > needed) {
+      sets.remove(sets.size() - 1);
+      layers.remove(layers.size() - 1).dispose();
+    }
+    if (blend == null) {
+      blend = new float[4][parent.width * parent.height];
+    }
+
+    float[][] from;
+    if (keep > 0 && kept_scene != null && kept_count == keep && kept_mode == mode && scene.same_start(kept_scene, keep)) {
+      from = kept;
+    } else {
+      from = blend_grids(scene, 0, keep, null);
+      if (keep > 0) {
+        if (kept == null) {
+          kept = new float[4][parent.width * parent.height];
+        }
+        for (int k = 0; k < 4; k++) {
+          System.arraycopy(blend[k], 0, kept[k], 0, blend[k].length);
+        }
+        kept_scene = scene.copy();
+        kept_count = keep;
+        kept_mode = mode;
+        from = kept;
+      } else {
+        kept_scene = null;
+      }
+    }
+    from = blend_grids(scene, keep, n, from);
+
+    final float[][] result = from;
+    out.loadPixels();
+    run_bands(new Band() {
+      void run(int lo, int hi) {
+        finish(mode, result, out.pixels, lo, hi);
+      }
+    });
+    out.updatePixels();
+    parent.image(out, 0, 0);
+    float ms = (System.nanoTime() - start) / 1e6f;
+    millis = millis == 0 ? ms : millis + (ms - millis) * 0.1f;
+  }
+
+  //something to do to a band of pixels, from lo up to hi
+  private static abstract class Band {
+    abstract void run(int lo, int hi);
+  }
+
+  //split the screen into a band of rows for each thread, and run a job on
+  //each band
+  private static void run_bands(final Band band) {
+    ArrayList<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+    final int w = parent.width, h = parent.height;
+    for (int t = 0; t < threads; t++) {
+      final int lo = t * h / threads * w;
+      final int hi = (t + 1) * h / threads * w;
+      jobs.add(new Callable<Object>() {
+        public Object call() {
+          band.run(lo, hi);
+          return null;
+        }
+      });
+    }
+    run(jobs);
+  }
+
+  //blend the grids of a scene from lo up to hi onto a blend, a round at a
+  //time, giving the blend they end up in. A null blend is nothing at all
+  private static float[][] blend_grids(final Scene scene, int lo, int hi, float[][] from) {
+    for (int i = lo; i < hi; i += layers.size()) {
+      final int m = Math.min(layers.size(), hi - i);
+      ArrayList<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+      for (int j = 0; j < m; j++) {
+        final int k = j, grid = i + j;
+        jobs.add(new Callable<Object>() {
+          public Object call() {
+            PGraphics layer = layers.get(k);
+            layer.beginDraw();
+            layer.clear();
+            scene.draw(sets.get(k), grid, grid + 1);
+            layer.endDraw();
+            layer.loadPixels();
+            return null;
+          }
+        });
+      }
+      run(jobs);
+      final int[][] src = new int[m][];
+      for (int k = 0; k < m; k++) {
+        src[k] = layers.get(k).pixels;
+        GridDrawer.add_segments(sets.get(k));
+      }
+      final float[][] under = from;
+      run_bands(new Band() {
+        void run(int lo, int hi) {
+          blend_layers(mode, src, under, blend, lo, hi);
+        }
+      });
+      from = blend;
+    }
+    return from;
+  }
+  //run jobs on the pool and wait for them all
+  private static void run(ArrayList<Callable<Object>> jobs) {
+    try {
+      for (Future<Object> f : pool.invokeAll(jobs)) {
+        f.get();
+      }
+    }
+    catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  //blend layers, given as their pixels, onto the blend from in a mode, over
+  //pixels from lo up to hi, leaving the result in to. A null from is nothing
+  //at all. each layer is put onto what is there already, as in the usual
+  //separable blend modes, with the colour so far kept premultiplied by how
+  //much of the pixel has been covered. The mode is picked once, and then each
+  //layer is run along the band in a plain loop, without branching on every
+  //pixel - where a layer is clear each mode leaves the blend as it was anyway
+  static void blend_layers(int mode, int[][] src, float[][] from, float[][] to, int lo, int hi) {
+    float[] r = to[0], g = to[1], b = to[2], w = to[3];
+    for (int k = 0; k < 4; k++) {
+      if (from == null) {
+        Arrays.fill(to[k], lo, hi, 0);
+      } else if (from != to) {
+        System.arraycopy(from[k], lo, to[k], lo, hi - lo);
+      }
+    }
+    final float scale = 1 / 255f;
+    switch (mode) {
+    case AVERAGE:
+    case ADD:
+      for (int[] px : src) {
+        for (int p = lo; p < hi; p++) {
+          int c = px[p];
+          float a = (c >>> 24) * scale * scale;
+          r[p] += a * ((c >> 16) & 0xff);
+          g[p] += a * ((c >> 8) & 0xff);
+          b[p] += a * (c & 0xff);
+          w[p] += a * 255;
+        }
+      }
+      break;
+    case MULTIPLY:
+      //where covered, multiplied by what is there, elsewhere just the layer
+      for (int[] px : src) {
+        for (int p = lo; p < hi; p++) {
+          int c = px[p];
+          float a = (c >>> 24) * scale, cover = w[p];
+          r[p] = a * ((c >> 16) & 0xff) * scale * (r[p] + 1 - cover) + (1 - a) * r[p];
+          g[p] = a * ((c >> 8) & 0xff) * scale * (g[p] + 1 - cover) + (1 - a) * g[p];
+          b[p] = a * (c & 0xff) * scale * (b[p] + 1 - cover) + (1 - a) * b[p];
+          w[p] = cover + a * (1 - cover);
+        }
+      }
+      break;
+    case DIFFERENCE:
+      for (int[] px : src) {
+        for (int p = lo; p < hi; p++) {
+          int c = px[p];
+          float a = (c >>> 24) * scale, cover = w[p];
+          float cr = ((c >> 16) & 0xff) * scale, cg = ((c >> 8) & 0xff) * scale, cb = (c & 0xff) * scale;
+          r[p] = a * Math.abs(r[p] - cover * cr) + a * (1 - cover) * cr + (1 - a) * r[p];
+          g[p] = a * Math.abs(g[p] - cover * cg) + a * (1 - cover) * cg + (1 - a) * g[p];
+          b[p] = a * Math.abs(b[p] - cover * cb) + a * (1 - cover) * cb + (1 - a) * b[p];
+          w[p] = cover + a * (1 - cover);
+        }
+      }
+      break;
+    }
+  }
+
+  //turn a blend made in a mode into pixels over pixels from lo up to hi.
+  //Over the black background the premultiplied colour is what is seen.
+  //averaging only divides where more than a whole pixel's worth of grids
+  //cover it, so the anti aliased edges of lone lines stay as they are
+  static void finish(int mode, float[][] from, int[] dst, int lo, int hi) {
+    if (from == null) {
+      Arrays.fill(dst, lo, hi, 0xff000000);
+      return;
+    }
+    float[] r = from[0], g = from[1], b = from[2], w = from[3];
+    for (int p = lo; p < hi; p++) {
+      float d = mode == AVERAGE && w[p] > 1 ? 1 / w[p] : 1;
+      dst[p] = 0xff000000 | (channel(r[p] * d) << 16) | (channel(g[p] * d) << 8) | channel(b[p] * d);
+    }
+  }
+
+  private static int channel(float v) {
+    return Math.min(255, (int)(v * 255 + 0.5f));
+  }
+
+  public static String get_info() {
+    return String.format("blending %s, %.1fms", NAMES[mode], mode == OVER ? 0 : millis);
+  }
+}
@@ -1,9 +1,5 @@
 import java.util.ArrayList;
 import processing.core.PApplet;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.lang.Runtime;
-import java.io.InputStream;
 
 //a "contained" class for a grid. this means it handled using ClickUIElements
 //to set grid parameters.
@@ -16,9 +12,17 @@ public class ContainedGrid implements GridConstants {
   private Rotatable rotation;
   private Button make_copy;
   private Button delete;
+  //where the parameters the grid was last drawn with are kept in the store,
+  //and whether they changed when they were last updated
+  private int slot;
+  private boolean changed = true;
 
   //static list of containedgrids
   private static ArrayList<ContainedGrid> grids = new ArrayList<ContainedGrid>();
+  //the parameters of every grid, in the same order as grids. keeping them all
+  //in one scene's arrays means drawing and saving don't have to go through
+  //each grid's ui elements
+  private static Scene store;
 
   //get number of active grids (number at bottom left)
   public static int get_num_of_grids() {
@@ -29,6 +33,16 @@ public class ContainedGrid implements GridConstants {
   public static void init(PApplet app) {
     parent = app;
     grids = new ArrayList<ContainedGrid>();
+    store = new Scene(parent.width, parent.height);
+  }
+
+  //add this grid to the end of the list and the store, which is filled in
+  //straight away so that it can be serialised before it is first drawn
+  private void add() {
+    slot = store.add(grid.type, 0, 0, 0, 0, 0, 0);
+    grids.add(this);
+    update_grid();
+    Redraw.mark();
   }
 
   //initialiser, initialising required ui elements
@@ -48,7 +62,7 @@ public class ContainedGrid implements GridConstants {
     rotation = new Rotatable(parent.width / 2, parent.height / 2, PI, parent.color(0, 255, 255));
     make_copy = new Button(new MakeCopy(), position.get_x(), position.get_y(), 25, -40, parent.color(0, 255, 0));
     delete = new Button(new Kill(), position.get_x(), position.get_y(), -25, -40, parent.color(255, 0, 0));
-    grids.add(this);
+    add();
   }
 
   //an inner class which can make a copy to pass to the copy Button
@@ -72,7 +86,7 @@ public class ContainedGrid implements GridConstants {
     this.rotation = rotation;
     make_copy = new Button(new MakeCopy(), position.get_x(), position.get_y(), 25, -40, parent.color(0, 255, 0));
     delete = new Button(new Kill(), position.get_x(), position.get_y(), -25, -40, parent.color(255, 0, 0));
-    grids.add(this);
+    add();
   }
 
   //copy
@@ -93,82 +107,44 @@ public class ContainedGrid implements GridConstants {
       rotation.kill();
       make_copy.kill();
       delete.kill();
-      for (int i = 0; i < grids.size(); i++) {
-        if (grids.get(i) == ContainedGrid.this) {
-          grids.remove(i);
-          break;
-        }
+      //the button can be clicked again before it is gone
+      if (slot < 0) {
+        return;
       }
+      grids.remove(slot);
+      store.remove(slot);
+      for (int i = slot; i < grids.size(); i++) {
+        grids.get(i).slot = i;
+      }
+      slot = -1;
+      Redraw.mark();
     }
   }
 
   //serialisation functionality - this can be used with convert.py to convert
-  //back into postscript. experimentally this can be done immediately with the i
-  //button, but this relinquished some control over convert.py's behaviour, such
-  //as that it forces -s, for compression
+  //back into postscript. with the i button the VectorExporter writes
+  //postscript and svg straight away
 
-  //serialise the grid instance
-  private String serialise_grid() {
-    parent.colorMode(HSB, 255, 255, 255);
-    float x = position.get_x();
-    float y = position.get_y();
-    float th = rotation.get_rotation();
-    float gap = gap_size.get_value();
-    float stroke = stroke_width.get_value();
-    float h = hue.get_value();
-    float s = 355 - sat.get_value();
-    float b = bri.get_value();
-    int c = parent.color(h, s, b);
-    return String.format(
-      "type %s\nr %f\ng %f\nb %f\nx %f\ny %f\nrotation %f\ngap_size %f\nstroke_width %f\nradius %f\n", 
-      grid.getClass().getSimpleName(), parent.red(c), parent.green(c), parent.blue(c), x, y, th, gap, stroke, GridDrawer.get_radius(x, y));
+  //statically serialise all grid instances. This runs along the store's
+  //arrays rather than asking every grid's ui for its parameters
+  static String[] serialise_to_string() {
+    return to_scene().to_strings();
   }
 
-  //statically serialise all grid instances
-  private static String[] serialise_to_string() {
-    String[] ser = new String[grids.size() + 1];
-    ser[0] = String.format("screen_width %d\nscreen_height %d\n", parent.width, parent.height);
-    int i = 1;
-    for (ContainedGrid g : grids) {
-      ser[i] = g.serialise_grid();
-      i++;
-    }
-    return ser;
+  //all grids as a scene, with the parameters they were last drawn with
+  public static Scene to_scene() {
+    Scene scene = store.copy();
+    scene.width = parent.width;
+    scene.height = parent.height;
+    return scene;
   }
 
-  //serialise grids to a file, optionally with a .tiff and .ps version also
-  //stored. uses a timestamp to generate a unique filename
+  //serialise grids to a file, optionally with a .png, .ps and .svg version
+  //also stored. the files are written in the background by the
+  //SnapshotQueue, which uses a timestamp to generate a unique filename
   public static void serialise_to_file(boolean sav_img) {
-    String stamp = new SimpleDateFormat("yyyy_MM_dd_HHmmss").format(Calendar.getInstance().getTime());
-
-    String filename = "data/moire_" + stamp + ".txt";
-    parent.saveStrings(filename, serialise_to_string());
-    parent.println(String.format("saving as %s", filename));
-    if (sav_img) {
-      String img_name = "data/img_" + stamp + ".tiff";
-      parent.save(img_name);
-      String psname = "data/img_" + stamp + ".ps";
-
-      String[] cmd = {
-        "/bin/sh", 
-        "-c", 
-        String.format("cat %s | /usr/bin/env python3 %s -bs -f %s > %s", 
-        parent.sketchPath(filename), parent.sketchPath("serial_conversion/convert.py"), 
-        parent.sketchPath("serial_conversion/grid_template.ps"), parent.sketchPath(psname))
-      };
-      parent.printArray(cmd);
-      try {
-        Process p = Runtime.getRuntime().exec(cmd);
-        //used in debugging to examine errors
-        InputStream s = p.getErrorStream();
-        for (int i = 0; i < 400; i++) {
-          parent.print(Character.toString((char)p.getErrorStream().read()));
-        }
-        p.waitFor();
-      } 
-      catch (Exception ex) {
-      }
-    }
+    Scene scene = to_scene();
+    SnapshotQueue.submit("moire", "img", scene.to_strings(), scene, sav_img);
   }
 
   //again allows defaulting of a parameter to false
@@ -176,8 +152,14 @@ public class ContainedGrid implements GridConstants {
     serialise_to_file(false);
   }
 
-  //actually draw the grid, getting and parameters
-  private void draw_grid() {
+  //move the grid somewhere, as if its position had been dragged there
+  void move_to(float x, float y) {
+    position.drag(x, y);
+    update_grid();
+  }
+
+  //get the parameters of the grid, keeping track of whether any changed
+  private void update_grid() {
     //first gets position, and updates all other elements to that position
     float x = position.get_x();
     float y = position.get_y();
@@ -211,15 +193,69 @@ public class ContainedGrid implements GridConstants {
     parent.colorMode(HSB, 255, 255, 255);
     int c = parent.color(h, s, b, a);
 
-    grid.draw(x, y, th, gap, stroke, c);
+    int i = slot;
+    changed = x != store.x[i] || y != store.y[i] || th != store.th[i] || gap != store.gap[i] 
+      || stroke != store.stroke[i] || c != store.c[i];
+    store.set(i, grid.type, x, y, th, gap, stroke, c);
+  }
+
+  //actually draw the grid, with the parameters it was last updated with
+  void draw_grid() {
+    draw_grid(grid);
   }
 
-  //statically draw all grids
+  //draw the grid with a grid from some other set
+  void draw_grid(GridDrawer[] set) {
+    draw_grid(set[grid.type]);
+  }
+
+  //draw with the given grid. this is timed for the PerfHud. A batched grid is
+  //only stroked when its batch is, and the GridDrawer times that for each
+  //type of grid, so any batch stroked while drawing this grid is left out
+  private void draw_grid(GridDrawer drawer) {
+    int i = slot;
+    long start = PerfHud.is_active() ? System.nanoTime() : 0;
+    long stroked = GridDrawer.get_stroke_ns();
+    drawer.draw(store.x[i], store.y[i], store.th[i], store.gap[i], store.stroke[i], store.c[i]);
+    if (start != 0) {
+      long ns = System.nanoTime() - start - (GridDrawer.get_stroke_ns() - stroked);
+      PerfHud.grid_drawn(i, grid.type, store.gap[i], ns);
+    }
+  }
+
+  //whether the parameters changed when the grid was last updated
+  boolean has_changed() {
+    return changed;
+  }
+
+  //whether a ClickUIElement belongs to this grid
+  private boolean owns(ClickUIElement e) {
+    return e == gap_size || e == stroke_width || e == hue || e == sat || e == bri || e == alp
+      || e == position || e == rotation || e == make_copy || e == delete;
+  }
+
+  //statically draw all grids. the grid with the selected ClickUIElement is
+  //the only one expected to change, so the LayerCache can keep the rest
   public static void draw() {
+    ClickUIElement selected = ClickUIElement.get_selected();
+    ContainedGrid active = null;
     for (ContainedGrid g : grids) {
-      parent.stroke(255);
-      parent.noFill();
-      g.draw_grid();
+      g.update_grid();
+      if (selected != null && g.owns(selected)) {
+        active = g;
+      }
+    }
+    //while a grid is dragged only its moire may be drawn, if it has any
+    if (active != null && MoirePreview.is_previewing() && MoirePreview.draw(store, active.slot)) {
+      return;
+    }
+    //as with the LayerCache, the grids below the active one (or all of them,
+    //if none is) are expected to stay the same
+    if (Compositor.is_active()) {
+      int keep = active == null ? store.size() : active.slot;
+      Compositor.draw(store, LayerCache.enabled ? keep : 0);
+      return;
     }
+    LayerCache.draw(grids, active);
   }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ public class Draggable extends ClickUIElement implements GridConstants {
       x += delta;
       break;
     }
+    place(x, y, r);
   }
 
   //various getters and setters for the delta functionality
@@ -71,6 +72,7 @@ public class Draggable extends ClickUIElement implements GridConstants {
     super(c);
     this.x = x;
     this.y = y;
+    place(x, y, r);
   }
 
   //simple calculation to determine if a point if nearer to the centre than the
@@ -83,6 +85,7 @@ public class Draggable extends ClickUIElement implements GridConstants {
   void drag(float x, float y) {
     this.x = x;
     this.y = y;
+    place(x, y, r);
   }
 
   //draw the element
@@ -1,12 +1,17 @@
 import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
 import static processing.core.PApplet.map;
 import static processing.core.PApplet.constrain;
-
-import processing.core.PVector;
+import static processing.core.PApplet.dist;
+import static processing.core.PApplet.mag;
 
 //ClickUIElement to extend with the mouse, providing one linear scalar value
 public class Extendable extends ClickUIElement implements GridConstants {
-  private PVector len, loc; //vectors to keep position, orientation and magnitude
+  //position, and the vector to the handle, keeping orientation and
+  //magnitude. these are plain floats so that moving the element every frame
+  //doesn't make any new objects
+  private float loc_x, loc_y, len_x, len_y;
   private float min, max, th; //floats to vary between
   private static final float r = EXTENDABLE_RADIUS;
   private static final float range = EXTENDABLE_RANGE;
@@ -34,20 +39,25 @@ public class Extendable extends ClickUIElement implements GridConstants {
   }
   
   public void set_value(float val) {
-    len.setMag(map(constrain(val, min, max), 0, max, 1, range));
+    set_mag(map(constrain(val, min, max), 0, max, 1, range));
   }
 
-  //delta getters and setters
+  //delta getters and setters. like PVector.setMag, a vector of no length
+  //stays that way
   private void set_mag(float mag) {
-    len.setMag(mag);
+    float m = mag(len_x, len_y);
+    float k = m == 0 ? 0 : mag / m;
+    len_x *= k;
+    len_y *= k;
+    place_handle();
   }
 
   private void inc_mag() {
-    len.setMag(len.mag() + delta);
+    set_mag(mag(len_x, len_y) + delta);
   }
 
   private void dec_mag() {
-    len.setMag(len.mag() - delta);
+    set_mag(mag(len_x, len_y) - delta);
   }
 
   public static void increase_delta() {
@@ -67,44 +77,48 @@ public class Extendable extends ClickUIElement implements GridConstants {
 
   //make a copy using the copy constructor
   public Extendable copy() {
-    return new Extendable(loc, len, th, min, max, c);
+    return new Extendable(this);
   }
 
   //private copy constructor
-  private Extendable(PVector loc, PVector len, float th, float min, float max, int c) {
-    super(c);
-    this.loc = loc.copy();
-    this.len = len.copy();
-    this.min = min;
-    this.max = max;
-    this.th = th;
+  private Extendable(Extendable e) {
+    this(e.loc_x, e.loc_y, e.th, e.min, e.max, e.c);
+    len_x = e.len_x;
+    len_y = e.len_y;
+    place_handle();
   }
 
   //get value
   public float get_value() {
-    return constrain(map(len.mag(), 0, range, 0, max), min, max);
+    return constrain(map(mag(len_x, len_y), 0, range, 0, max), min, max);
   }
 
   //set position
   public void set_pos(float x, float y) {
-    loc.x = x;
-    loc.y = y;
+    loc_x = x;
+    loc_y = y;
+    place_handle();
   }
 
   //set rotation
   public void set_rotation(float th) {
-    float m = len.mag();
-    len = PVector.fromAngle(th + this.th).mult(m);
+    float m = mag(len_x, len_y);
+    len_x = (float)cos(th + this.th) * m;
+    len_y = (float)sin(th + this.th) * m;
+    place_handle();
   }
 
   //public constructor
   public Extendable(float x, float y, float th, float min, float max, int c) {
     super(c);
-    loc = new PVector(x, y);
-    len = PVector.fromAngle(th).mult(range / 2);
+    loc_x = x;
+    loc_y = y;
+    len_x = (float)cos(th) * range / 2;
+    len_y = (float)sin(th) * range / 2;
     this.min = min;
     this.max = max;
     this.th = th;
+    place_handle();
   }
 
   //public constructor setting some default values
@@ -114,21 +128,27 @@ public class Extendable extends ClickUIElement implements GridConstants {
 
   //check if point hovers whith some simple vector calculations
   boolean hovers(float x, float y) {
-    return new PVector(x, y).sub(PVector.add(loc, len)).mag() < r;
+    return dist(x, y, loc_x + len_x, loc_y + len_y) < r;
   }
 
   //when the mouse is dragged, adjust the length. For a nice effect that allows
   //the mouse to go to the side, I use the dot product to find how far in the
   //direction of the direction vector the mouse vector is positioned
   void drag(float x, float y) {
-    float l = PVector.dot(new PVector(x, y).sub(loc), len.normalize());
+    float m = mag(len_x, len_y);
+    float l = m == 0 ? 0 : ((x - loc_x) * len_x + (y - loc_y) * len_y) / m;
     l = constrain(l, 1, range);
-    len.setMag(l);
+    set_mag(l);
+  }
+
+  //move where the element can be clicked to the end of the line
+  private void place_handle() {
+    place(loc_x + len_x, loc_y + len_y, r);
   }
 
   //draw element
   void draw_element() {
-    parent.ellipse(loc.x + len.x, loc.y + len.y, r*2, r*2);
-    parent.line(loc.x, loc.y, loc.x + len.x, loc.y + len.y);
+    parent.ellipse(loc_x + len_x, loc_y + len_y, r*2, r*2);
+    parent.line(loc_x, loc_y, loc_x + len_x, loc_y + len_y);
   }
 }
\ No newline at end of file
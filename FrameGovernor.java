@@ -0,0 +1,105 @@
+import static processing.core.PApplet.max;
+
+import java.util.List;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+//keeps dragging smooth on heavy scenes. It times how long the grids take to
+//draw each frame, and while a ClickUIElement is being dragged, if that goes
+//over the frame budget, the grids being redrawn are drawn at a lower
+//resolution offscreen and stretched to fit. Once the mouse has been let go
+//for a moment it steps back up to full resolution over the next few frames.
+public class FrameGovernor implements GridConstants {
+  private static PApplet parent;
+  public static boolean enabled;
+  //the current level in GOVERNOR_SCALES, and the graphics and grids for each
+  private static int level;
+  private static PGraphics[] layers;
+  private static GridDrawer[][] sets;
+  //smoothed time to draw the grids, and when the frame started
+  private static float ms;
+  private static long start;
+  //when input was last seen, and frames to wait before changing level again
+  private static long last_input;
+  private static int settle;
+
+  public static void init(PApplet app) {
+    parent = app;
+    enabled = GOVERNOR_ENABLED;
+    level = 0;
+    layers = new PGraphics[GOVERNOR_SCALES.length];
+    sets = new GridDrawer[GOVERNOR_SCALES.length][];
+    ms = 0;
+    settle = 0;
+  }
+
+  //whether grids are being drawn at a lower resolution
+  public static boolean is_reduced() {
+    return enabled && level > 0;
+  }
+
+  public static void begin() {
+    start = System.nanoTime();
+  }
+
+  //time the frame and pick the level for the next one
+  public static void end() {
+    long now = System.nanoTime();
+    float frame = (now - start) / 1e6f;
+    ms = ms == 0 ? frame : ms + (frame - ms) * 0.5f;
+    if (!enabled) {
+      level = 0;
+      return;
+    }
+    if (settle > 0) {
+      settle--;
+    }
+    if (ClickUIElement.is_dragging()) {
+      last_input = now;
+      if (settle == 0 && ms > GOVERNOR_FRAME_BUDGET_MS && level < GOVERNOR_SCALES.length - 1) {
+        set_level(level + 1);
+      } else if (settle == 0 && ms < GOVERNOR_FRAME_BUDGET_MS * GOVERNOR_RAISE_FRACTION && level > 0) {
+        set_level(level - 1);
+      }
+    } else if (level > 0 && (now - last_input) / 1e6f > GOVERNOR_IDLE_MS) {
+      set_level(level - 1);
+    }
+    //keep frames coming until it is back to full resolution
+    if (level > 0) {
+      Redraw.mark();
+    }
+  }
+
+  //change level, giving the frame time a few frames to catch up
+  private static void set_level(int l) {
+    level = l;
+    settle = GOVERNOR_SETTLE_FRAMES;
+  }
+
+  //draw grids at the current level's resolution, and put them on screen
+  public static void draw(List<ContainedGrid> grids) {
+    float s = GOVERNOR_SCALES[level];
+    PGraphics layer = layers[level];
+    if (layer == null) {
+      layer = parent.createGraphics(max(1, (int)(parent.width * s)), max(1, (int)(parent.height * s)));
+      layers[level] = layer;
+      sets[level] = GridDrawer.make_screen_set(layer, parent.width, parent.height);
+    }
+    GridDrawer[] set = sets[level];
+    layer.beginDraw();
+    layer.clear();
+    layer.scale(layer.width / (float)parent.width, layer.height / (float)parent.height);
+    GridDrawer.begin_batch(set);
+    for (ContainedGrid g : grids) {
+      g.draw_grid(set);
+    }
+    GridDrawer.end_batch(set);
+    layer.endDraw();
+    parent.image(layer, 0, 0, parent.width, parent.height);
+  }
+
+  public static String get_info() {
+    return String.format("governor %s: grids %.1fms, resolution %d%%", enabled ? "on" : "off", ms, 
+      (int)(100 * GOVERNOR_SCALES[enabled ? level : 0]));
+  }
+}
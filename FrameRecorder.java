@@ -0,0 +1,210 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import processing.core.PApplet;
+
+//records every frame to disk, for recording sessions in auto mode. Saving a
+//frame on the animation thread takes far longer than a frame, so all the
+//animation thread does is copy the frame into a slot of a ring of direct
+//buffers, allocated when recording starts, and hand the slot to a pool of
+//encoder threads. They write it out as a numbered png, or into one raw file
+//of frames, and give the slot back. If every slot is still waiting to be
+//written the frame is dropped (and counted) rather than holding up the sketch.
+//Frames are numbered in the order they are kept, so a recording with dropped
+//frames has no gaps in it, which would stop an encoder reading the pngs.
+public class FrameRecorder implements GridConstants {
+  private static PApplet parent;
+  //the recording going on, if there is one
+  private static Session session;
+  //how the last recording went, for the delta info box
+  private static volatile String last = "not recording";
+
+  public static void init(PApplet app) {
+    parent = app;
+  }
+
+  public static boolean is_recording() {
+    return session != null;
+  }
+
+  //start recording if not recording, otherwise stop
+  public static void toggle() {
+    if (session == null) {
+      start();
+    } else {
+      stop();
+    }
+  }
+
+  //start recording to a new directory in data
+  public static void start() {
+    String stamp = new SimpleDateFormat("yyyy_MM_dd_HHmmss").format(Calendar.getInstance().getTime());
+    File dir = new File(parent.sketchPath("data/rec_" + stamp));
+    dir.mkdirs();
+    try {
+      session = new Session(dir, parent.pixelWidth, parent.pixelHeight);
+      parent.println(String.format("recording to %s", dir));
+    } 
+    catch (Exception ex) {
+      parent.println(String.format("could not start recording: %s", ex));
+    }
+  }
+
+  //stop taking frames. the frames waiting are still written, after which
+  //the session says how it went
+  public static void stop() {
+    final Session s = session;
+    session = null;
+    s.encoders.shutdown();
+    //waiting for the encoders to finish is left to another thread
+    Thread t = new Thread(new Runnable() {
+      public void run() {
+        s.finish();
+      }
+    }
+    , "recording finisher");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  //copy the frame on screen into the ring, to be written in the background.
+  //Must be called from the animation thread
+  public static void capture() {
+    Session s = session;
+    if (s == null) {
+      return;
+    }
+    s.frames++;
+    Integer slot = s.free.poll();
+    if (slot == null) {
+      s.dropped.incrementAndGet();
+      return;
+    }
+    int frame = s.kept++;
+    parent.loadPixels();
+    ByteBuffer buf = s.slots[slot];
+    buf.clear();
+    buf.asIntBuffer().put(parent.pixels, 0, s.w * s.h);
+    s.encoders.execute(s.new Encode(frame, slot));
+  }
+
+  public static String get_info() {
+    Session s = session;
+    if (s == null) {
+      return "recording: " + last;
+    }
+    return String.format("recording: %d frames, %d written, %d dropped", s.frames, s.written.get(), s.dropped.get());
+  }
+
+  //one recording, with its own ring and encoders, so that a recording which
+  //is still being written out doesn't get in the way of the next one
+  private static class Session {
+    File dir;
+    int w, h;
+    ByteBuffer[] slots;
+    //the slots which are free to be copied into
+    ArrayBlockingQueue<Integer> free;
+    ExecutorService encoders;
+    //the file raw frames go into, if they are recorded raw
+    FileChannel raw;
+    //the frames offered, and those kept, which is what frames are numbered by
+    int frames, kept;
+    AtomicInteger written = new AtomicInteger(), dropped = new AtomicInteger();
+    long started = System.nanoTime();
+    //each encoder reuses an image to put frames in
+    ThreadLocal<BufferedImage> images = new ThreadLocal<BufferedImage>();
+
+    Session(File dir, int w, int h) throws Exception {
+      this.dir = dir;
+      this.w = w;
+      this.h = h;
+      slots = new ByteBuffer[FRAME_RECORDER_SLOTS];
+      free = new ArrayBlockingQueue<Integer>(FRAME_RECORDER_SLOTS);
+      for (int i = 0; i < FRAME_RECORDER_SLOTS; i++) {
+        slots[i] = ByteBuffer.allocateDirect(w * h * 4);
+        free.add(i);
+      }
+      if (FRAME_RECORDER_RAW) {
+        raw = FileChannel.open(new File(dir, String.format("frames_%dx%d.argb", w, h)).toPath(), 
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      //leave a core for the animation thread
+      int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+      encoders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "frame encoder");
+          t.setDaemon(true);
+          t.setPriority(Thread.NORM_PRIORITY - 1);
+          return t;
+        }
+      }
+      );
+    }
+
+    //write a frame from a slot and give the slot back
+    class Encode implements Runnable {
+      int frame, slot;
+
+      Encode(int frame, int slot) {
+        this.frame = frame;
+        this.slot = slot;
+      }
+
+      public void run() {
+        try {
+          ByteBuffer buf = slots[slot].duplicate();
+          buf.clear();
+          if (raw != null) {
+            //frames can be written out of order, so each goes to its place
+            long pos = (long)frame * w * h * 4;
+            while (buf.hasRemaining()) {
+              raw.write(buf, pos + buf.position());
+            }
+          } else {
+            BufferedImage img = images.get();
+            if (img == null) {
+              img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+              images.set(img);
+            }
+            buf.asIntBuffer().get(((DataBufferInt)img.getRaster().getDataBuffer()).getData());
+            ImageIO.write(img, "png", new File(dir, String.format("frame_%06d.png", frame)));
+          }
+          written.incrementAndGet();
+        } 
+        catch (Exception ex) {
+          parent.println(String.format("failed to write frame %d: %s", frame, ex));
+        } 
+        finally {
+          free.add(slot);
+        }
+      }
+    }
+
+    //wait for the encoders to write everything, then report
+    void finish() {
+      try {
+        encoders.awaitTermination(1, TimeUnit.HOURS);
+        if (raw != null) {
+          raw.close();
+        }
+      } 
+      catch (Exception ex) {
+      }
+      float secs = (System.nanoTime() - started) / 1e9f;
+      last = String.format("%d frames in %.1fs, %d written, %d dropped", frames, secs, written.get(), dropped.get());
+      parent.println(String.format("recorded %s to %s", last, dir));
+    }
+  }
+}
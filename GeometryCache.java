@@ -0,0 +1,92 @@
+import static java.lang.Math.ceil;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//a cache of retained lattices. Building a lattice means running a lot of
+//loops and square roots, but a lattice only depends on its type, gap size and
+//radius - moving or rotating a grid leaves it unchanged. So each lattice is
+//traced once into an array of lines around the origin, and GridDrawer
+//replays it into whichever sink the grid is being traced into, batched or
+//not, under whatever translation and rotation the grid currently has. Because
+//rotation is never part of the key, a grid being spun round always hits the
+//cache. Grids clipped to the screen trace only what is on it, which depends
+//on where the grid is, so they aren't cached - with clipping on (as it is by
+//default) only grids that can't be clipped use the cache, and the rest are
+//traced each frame, but only as far as the screen.
+public class GeometryCache implements GridConstants {
+  private static LinkedHashMap<Long, Lattice> lattices;
+  private static int hits, misses;
+
+  public static void init() {
+    //an access ordered map evicting its eldest entry makes a simple LRU
+    lattices = new LinkedHashMap<Long, Lattice>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long, Lattice> eldest) {
+        return size() > GEOMETRY_CACHE_SIZE;
+      }
+    };
+    hits = 0;
+    misses = 0;
+  }
+
+  //get the lattice for a grid, building it if need be. the radius is rounded
+  //up to a bucket, so that moving a grid about still hits the cache. The gap
+  //is kept exactly, as moire shows up the slightest difference in it - a
+  //lattice traced at a rounded gap drifts by a whole cell a couple of hundred
+  //cells out - so changing the gap traces a new lattice. Grids may be drawn
+  //from several threads at once, so only one can use the cache at a time. A
+  //lattice is never changed once built, so it can be replayed from any thread
+  public static synchronized Lattice get(GridDrawer grid, float r, float gap) {
+    long r_b = min((long)ceil(r / GEOMETRY_CACHE_RADIUS_BUCKET), 0xffffff);
+    long key = ((long)grid.type << 56) | (r_b << 32) | (Float.floatToIntBits(gap) & 0xffffffffL);
+    Lattice l = lattices.get(key);
+    if (l == null) {
+      misses++;
+      l = new Lattice();
+      grid.trace_into(l, r_b * GEOMETRY_CACHE_RADIUS_BUCKET, gap);
+      l.trim();
+      lattices.put(key, l);
+    } else {
+      hits++;
+    }
+    return l;
+  }
+
+  public static int get_hits() {
+    return hits;
+  }
+
+  public static int get_misses() {
+    return misses;
+  }
+
+  //a traced lattice, as the ends of its lines one after another. Arcs are
+  //cut up into short lines as only lines are stored
+  static class Lattice extends GridDrawer.SegmentSink {
+    private float[] lines = new float[256];
+    private int n;
+
+    public void line(float x1, float y1, float x2, float y2) {
+      if (n + 4 > lines.length) {
+        lines = Arrays.copyOf(lines, lines.length * 2);
+      }
+      lines[n++] = x1;
+      lines[n++] = y1;
+      lines[n++] = x2;
+      lines[n++] = y2;
+    }
+
+    private void trim() {
+      lines = Arrays.copyOf(lines, n);
+    }
+
+    //send every line to a sink
+    void replay(LineSink s) {
+      for (int i = 0; i < n; i += 4) {
+        s.line(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+      }
+    }
+  }
+}
@@ -0,0 +1,222 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.event.MouseEvent;
+
+//a command line program to benchmark the hot paths of the sketch, so that a
+//change to rendering can be measured rather than eyeballed. It draws every
+//type of grid into an offscreen graphics at a sweep of gap sizes, stroke
+//widths and canvas sizes, clicks on the ui with different numbers of grids
+//and serialises those grids. Each benchmark is warmed up and then timed over
+//several iterations, in the same spirit as JMH. It can be run from the built
+//sketch as
+//  java -cp core.jar:. GridBench [-f filter] [-q] [-o results.json] [-c old.json]
+//where -f only runs benchmarks whose name contains the filter, -q runs one
+//short iteration of each for a quick look, -o is where the results are
+//written as json (by default bench.json) and -c compares against the results
+//of an earlier run.
+public class GridBench implements GridConstants {
+  private static PApplet app;
+  private static String filter = "";
+  private static int iteration_ms = BENCH_ITERATION_MS;
+  private static int warmups = BENCH_WARMUP_ITERATIONS;
+  private static int iterations = BENCH_MEASURE_ITERATIONS;
+  //each result as a line of json, and the mean times of an earlier run
+  private static ArrayList<String> results = new ArrayList<String>();
+  private static HashMap<String, Float> previous = new HashMap<String, Float>();
+  //how many times the current benchmark has been run
+  private static int count;
+  //somewhere to put what benchmarks work out, so it can't be optimised away
+  private static long sink;
+
+  //something to benchmark. run is called over and over, with a count of how
+  //many times it has been run
+  private static abstract class Op {
+    abstract void run(int i);
+  }
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    File out = new File("bench.json");
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-f") && i + 1 < args.length) {
+        filter = args[++i];
+      } else if (args[i].equals("-q")) {
+        iteration_ms = BENCH_ITERATION_MS / 2;
+        warmups = 1;
+        iterations = 1;
+      } else if (args[i].equals("-o") && i + 1 < args.length) {
+        out = new File(args[++i]);
+      } else if (args[i].equals("-c") && i + 1 < args.length) {
+        read_previous(new File(args[++i]));
+      } else {
+        System.err.println("usage: GridBench [-f filter] [-q] [-o results.json] [-c old.json]");
+        System.exit(1);
+      }
+    }
+
+    //the sketch is never run, but the grids and ui need a PApplet with some
+    //graphics to set colours with
+    app = new PApplet();
+    app.width = BENCH_CANVASES[BENCH_CANVASES.length - 1][0];
+    app.height = BENCH_CANVASES[BENCH_CANVASES.length - 1][1];
+    app.g = app.createGraphics(app.width, app.height, JAVA2D);
+    GridDrawer.init(app);
+    GeometryCache.init();
+    RasterEngine.init();
+
+    bench_grids();
+    bench_ui();
+
+    StringBuilder json = new StringBuilder("[\n");
+    for (int i = 0; i < results.size(); i++) {
+      json.append("  ").append(results.get(i)).append(i < results.size() - 1 ? ",\n" : "\n");
+    }
+    json.append("]\n");
+    PApplet.saveStrings(out, new String[] {json.toString()});
+    System.out.println(String.format("wrote %d results to %s", results.size(), out));
+  }
+
+  //draw one grid of each type at a time to an offscreen graphics. the grid
+  //turns a little each time it is drawn, as it would in the sketch
+  private static void bench_grids() {
+    for (int[] canvas : BENCH_CANVASES) {
+      final int w = canvas[0];
+      final int h = canvas[1];
+      final PGraphics pg = app.createGraphics(w, h, JAVA2D);
+      final GridDrawer[] set = GridDrawer.make_screen_set(pg, w, h);
+      for (int type = 0; type < GridDrawer.num; type++) {
+        for (int k = 0; k < BENCH_GAP_STEPS; k++) {
+          float gap = BENCH_GAP_STEPS == 1 ? GAP_SIZE_MIN : GAP_SIZE_MIN + k * (GAP_SIZE_MAX - GAP_SIZE_MIN) / (BENCH_GAP_STEPS - 1);
+          for (float stroke : BENCH_STROKES) {
+            final Scene scene = new Scene(w, h);
+            scene.add(type, w / 2, h / 2, 0, gap, stroke, 0xffffffff);
+            String name = String.format(Locale.ROOT, "grid/%s/gap=%.1f/stroke=%.1f/canvas=%dx%d", GridDrawer.get_name(type), gap, stroke, w, h);
+            run(name, new Op() {
+              void run(int i) {
+                scene.th[0] = i * 0.001f;
+                pg.beginDraw();
+                pg.background(0);
+                scene.draw(set);
+                pg.endDraw();
+              }
+            });
+          }
+        }
+      }
+      pg.dispose();
+    }
+  }
+
+  //click on the ui with different numbers of grids spread over the screen,
+  //and serialise them. half the clicks land on the centre of a grid, and
+  //clicks which would press a button are left out as they add or remove grids
+  private static void bench_ui() {
+    for (int n : BENCH_GRID_COUNTS) {
+      ContainedGrid.init(app);
+      ClickUIElement.init(app);
+      Random rnd = new Random(n);
+      for (int i = 0; i < n; i++) {
+        new ContainedGrid(rnd.nextInt(GridDrawer.num)).move_to(rnd.nextFloat() * app.width, rnd.nextFloat() * app.height);
+      }
+      ArrayList<MouseEvent> presses = new ArrayList<MouseEvent>();
+      while (presses.size() < 1024) {
+        float x = rnd.nextFloat() * app.width;
+        float y = rnd.nextFloat() * app.height;
+        if (rnd.nextBoolean()) {
+          Scene grids = ContainedGrid.to_scene();
+          int g = rnd.nextInt(grids.size());
+          x = grids.x[g];
+          y = grids.y[g];
+        }
+        if (!(ClickUIElement.find(x, y) instanceof Button)) {
+          presses.add(new MouseEvent(null, 0, MouseEvent.PRESS, 0, (int)x, (int)y, LEFT, 1));
+        }
+      }
+      final MouseEvent[] press = presses.toArray(new MouseEvent[presses.size()]);
+      final MouseEvent release = new MouseEvent(null, 0, MouseEvent.RELEASE, 0, 0, 0, LEFT, 1);
+      run(String.format("ui/mouseEvent/grids=%d", n), new Op() {
+        void run(int i) {
+          ClickUIElement.mouseEvent(press[i & (press.length - 1)]);
+          ClickUIElement.mouseEvent(release);
+        }
+      });
+      run(String.format("ui/serialise_to_string/grids=%d", n), new Op() {
+        void run(int i) {
+          String[] ser = ContainedGrid.serialise_to_string();
+          sink += ser[ser.length - 1].length();
+        }
+      });
+    }
+  }
+
+  //warm up and then time a benchmark, if it passes the filter, keeping the
+  //mean, spread and best of the microseconds per run over the iterations
+  private static void run(String name, Op op) {
+    if (!name.contains(filter)) {
+      return;
+    }
+    count = 0;
+    for (int k = 0; k < warmups; k++) {
+      iterate(op);
+    }
+    float[] us = new float[iterations];
+    float mean = 0, best = Float.MAX_VALUE;
+    for (int k = 0; k < iterations; k++) {
+      us[k] = iterate(op);
+      mean += us[k] / iterations;
+      best = Math.min(best, us[k]);
+    }
+    float var = 0;
+    for (float u : us) {
+      var += (u - mean) * (u - mean) / Math.max(1, iterations - 1);
+    }
+    float error = (float)Math.sqrt(var);
+    //json needs a point for a decimal point, whatever the locale
+    results.add(String.format(Locale.ROOT, "{\"name\": \"%s\", \"mean_us\": %.3f, \"error_us\": %.3f, \"min_us\": %.3f, \"iterations\": %d}",
+      name, mean, error, best, iterations));
+    String msg = String.format(Locale.ROOT, "%-60s %12.3f us/op +- %.3f", name, mean, error);
+    Float before = previous.get(name);
+    if (before != null) {
+      msg += String.format(Locale.ROOT, "  (%+.1f%% against %.3f)", 100 * (mean - before) / before, before);
+    }
+    System.out.println(msg);
+  }
+
+  //run a benchmark over and over for one iteration, giving the microseconds
+  //each run took
+  private static float iterate(Op op) {
+    long start = System.nanoTime();
+    long end = start + iteration_ms * 1000000L;
+    long now;
+    int runs = 0;
+    do {
+      op.run(count++);
+      runs++;
+      now = System.nanoTime();
+    } while (now < end);
+    return (now - start) / 1e3f / runs;
+  }
+
+  //read the mean times from an earlier run's json, to compare against
+  private static void read_previous(File f) {
+    Pattern p = Pattern.compile("\"name\": \"(.*?)\", \"mean_us\": ([0-9.eE+-]+)");
+    String[] lines = PApplet.loadStrings(f);
+    if (lines == null) {
+      System.err.println(String.format("could not read %s to compare against", f));
+      return;
+    }
+    for (String line : lines) {
+      Matcher m = p.matcher(line);
+      if (m.find()) {
+        previous.put(m.group(1), Float.parseFloat(m.group(2)));
+      }
+    }
+  }
+}
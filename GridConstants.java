@@ -48,8 +48,15 @@ public interface GridConstants extends GridAbsoluteConstants {
   //the maximum stroke width in interactive mode
   public final float STROKE_WIDTH_MAX = 10;
 
-  //the default speed of a SineVariable
-  public final float SINEVARIABLE_SPEED_DEFAULT = 0.01f;
+  //the default speed of a wave in a SineBank
+  public final float SINE_SPEED_DEFAULT = 0.01f;
+  //the number of layers of the grid in auto mode. the first stays still in the
+  //middle of the screen and the others move
+  public final int AUTO_LAYERS = 2;
+  //the frames per second auto mode's waves are timed for, to seek to a time
+  public final float AUTO_FRAMES_PER_SECOND = 60;
+  //how many frames , and . jump back and forward in auto mode
+  public final int AUTO_SCRUB_FRAMES = 600;
 
   //the minimum for the lower colour value in auto mode
   public final float AUTO_GENERIC_COLOUR_MIN_RANGE_MIN = 0;
@@ -77,4 +84,108 @@ public interface GridConstants extends GridAbsoluteConstants {
   public final float AUTO_UNIT_GRID_GAP_SIZE_DEFAULT = 30;
   //the default gap_size for any other generic grid (eg, square, concentric) in auto mode
   public final float AUTO_GENERIC_GAP_SIZE_DEFAULT = 17;
+
+  //whether to retain traced lattices in the GeometryCache
+  public final boolean GEOMETRY_CACHE_ENABLED = true;
+  //the number of lattices the GeometryCache retains
+  public final int GEOMETRY_CACHE_SIZE = 16;
+  //the step radii are rounded up to in the GeometryCache
+  public final float GEOMETRY_CACHE_RADIUS_BUCKET = 100;
+  //the length of a line an arc is cut into in the GeometryCache
+  public final float GEOMETRY_CACHE_ARC_SEGMENT_LENGTH = 4;
+  //the fewest lines an arc is cut into in the GeometryCache
+  public final int GEOMETRY_CACHE_ARC_MIN_SEGMENTS = 8;
+
+  //whether lattices are clipped to the screen before being drawn
+  public final boolean VIEWPORT_CLIP_ENABLED = true;
+  //how far past the edge of the screen lattices are clipped
+  public final float VIEWPORT_CLIP_MARGIN = STROKE_WIDTH_MAX;
+
+  //whether opaque grids are batched into a single shape when drawn
+  public final boolean BATCH_ENABLED = true;
+
+  //whether grids other than the one being manipulated are kept in layers
+  public final boolean LAYER_CACHE_ENABLED = true;
+
+  //whether grids made of straight lines are worked out pixel by pixel
+  public final boolean RASTER_ENABLED = false;
+  //the number of rows a thread of the RasterEngine draws at once
+  public final int RASTER_ROWS_PER_TASK = 16;
+
+  //the number of tables of pixel radii and angles the RasterEngine keeps for
+  //polar grids
+  public final int RASTER_POLAR_TABLES = 4;
+
+  //whether the screen is drawn in tiles by several threads
+  public final boolean TILES_ENABLED = false;
+  //the number of columns of tiles the screen is split into
+  public final int TILE_COLUMNS = 4;
+  //the number of rows of tiles the screen is split into
+  public final int TILE_ROWS = 4;
+
+  //the number of snapshots which can wait to be saved in the background
+  public final int SNAPSHOT_QUEUE_SIZE = 4;
+
+  //the file in data every snapshot's scene is added to
+  public final String SCENE_LIBRARY = "scenes.bin";
+
+  //the number of frames the FrameRecorder can hold while they are written
+  public final int FRAME_RECORDER_SLOTS = 8;
+  //whether the FrameRecorder writes one raw file of frames instead of pngs
+  public final boolean FRAME_RECORDER_RAW = false;
+
+  //the size of a cell of the spatial hash ClickUIElements are found in
+  public final float UI_HASH_CELL_SIZE = 64;
+
+  //whether normal mode only draws a frame when something has changed
+  public final boolean REDRAW_ON_CHANGE_ENABLED = true;
+
+  //whether the FrameGovernor lowers the resolution of grids while dragging
+  public final boolean GOVERNOR_ENABLED = true;
+  //the time drawing the grids should take in a frame, in milliseconds
+  public final float GOVERNOR_FRAME_BUDGET_MS = 1000 / 60f;
+  //the resolutions the FrameGovernor steps through, from full
+  public final float[] GOVERNOR_SCALES = {1, 0.75f, 0.5f, 0.35f, 0.25f};
+  //the fraction of the budget under which it steps back up while dragging
+  public final float GOVERNOR_RAISE_FRACTION = 0.4f;
+  //the frames it waits after changing resolution before changing again
+  public final int GOVERNOR_SETTLE_FRAMES = 3;
+  //how long the mouse has to be let go before it steps back up, in milliseconds
+  public final float GOVERNOR_IDLE_MS = 150;
+
+  //how many frames the PerfHud works out percentiles of frame time over
+  public final int PERF_HUD_FRAMES = 240;
+  //how many of the slowest grids the PerfHud lists
+  public final int PERF_HUD_SLOWEST = 5;
+  //the rows logged to each performance csv before starting a new one
+  public final int PERF_CSV_ROWS = 10000;
+
+  //how long each iteration of a GridBench benchmark runs for, in milliseconds
+  public final int BENCH_ITERATION_MS = 200;
+  //the iterations run to warm up before measuring, and then measured
+  public final int BENCH_WARMUP_ITERATIONS = 3;
+  public final int BENCH_MEASURE_ITERATIONS = 5;
+  //how many gap sizes between GAP_SIZE_MIN and GAP_SIZE_MAX are benchmarked
+  public final int BENCH_GAP_STEPS = 3;
+  //the stroke widths benchmarked
+  public final float[] BENCH_STROKES = {STROKE_WIDTH_MIN, 2, STROKE_WIDTH_MAX};
+  //the canvas sizes benchmarked, as width and height
+  public final int[][] BENCH_CANVASES = {{800, 450}, {1700, 950}};
+  //the numbers of grids the ui and serialisation are benchmarked with
+  public final int[] BENCH_GRID_COUNTS = {1, 10, 50, 200};
+
+  //whether dragged grids start off previewed as just their moire
+  public final boolean MOIRE_PREVIEW_ENABLED = false;
+  //the size of the cells the moire preview is worked out in, in pixels
+  public final int MOIRE_PREVIEW_CELL = 6;
+  //how short the wave of a beat has to be, as a fraction of the shorter of
+  //the two grids' waves, for it to count as moire rather than just the grids
+  public final float MOIRE_PREVIEW_MAX_BEAT = 0.5f;
+
+  //the blend mode grids start off combined with, from those in the
+  //Compositor. 0 draws them over each other as normal
+  public final int COMPOSITOR_MODE = 0;
+  //the blend mode auto mode starts off with, and that ShowRender renders
+  //shows with. 1 averages the colours of layers where they cross
+  public final int AUTO_COMPOSITOR_MODE = 1;
 }
\ No newline at end of file
@@ -1,9 +1,24 @@
 import static java.lang.Math.sqrt;
 import static java.lang.Math.pow;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
 import static processing.core.PApplet.max;
+import static processing.core.PApplet.min;
 import static processing.core.PApplet.dist;
+import static processing.core.PApplet.abs;
+import static processing.core.PApplet.degrees;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+import processing.awt.PGraphicsJava2D;
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PVector;
 
 //an abtract class to draw a grid. instances are supplied statically, and within
@@ -11,34 +26,427 @@ import processing.core.PVector;
 public abstract class GridDrawer implements GridConstants {
   protected static PApplet parent;
 
+  //the index of this grid in gridtypes, also used to key the GeometryCache
+  int type;
+  //where the grid is drawn to. the grids in gridtypes all draw to the screen,
+  //but other sets can be made to draw to their own graphics, so that several
+  //threads can each draw with their own
+  protected Target target;
+  private static Target screen;
+
+  //where traced geometry currently goes, and the offset to add to it. The
+  //offset saves pushing and popping a matrix for every unit of a grid
+  protected LineSink sink;
+  protected float ox, oy;
+
+  //whether lattices are clipped to the screen
+  public static boolean clip;
+
+  //whether grids made of families of lines are drawn by the RasterEngine
+  public static boolean raster;
+
+  //whether opaque grids are gathered into batches
+  public static boolean batch;
+
+  //the corners of the screen in the grid's frame, and in the frame of the
+  //line family currently being traced
+  private float[] view = new float[8];
+  private float[] family = new float[8];
+  //the range found by span
+  protected float lo, hi;
+
   //there are a number of public methods, starting to implement functionality,
   //such as setting stroke weight. However, some grids may want access to this
   //behaviour, and this is entirely possible. TriangleRadial, for example, has a
   //custom behaviour for stroke weight, so it overrides the appropriate method
 
-  //public method to draw, handling stroke weight and stroke colour
+  //public method to draw, handling stroke weight and stroke colour. An opaque
+  //grid can be batched, as a single stroke then looks just like many. A
+  //translucent one has to be drawn line by line to darken where lines cross
   public void draw_grid(float x, float y, float r, float th, float gap, float stroke, int c) {
-    parent.stroke(c);
-    parent.strokeWeight(stroke);
-    parent.noFill();
+    if (draw_raster(x, y, th, gap, stroke, c)) {
+      return;
+    }
+    if (batch && batchable() && (c >>> 24) == 0xff) {
+      BatchSink batcher = target.batcher;
+      batcher.style(c, stroke);
+      batcher.transform(x, y, th);
+      int before = target.segments;
+      trace_grid(batcher, x, y, r, th, gap);
+      batcher.pending[type] += target.segments - before;
+      if (!target.batch_open) {
+        batcher.flush();
+      }
+      return;
+    }
+    //anything batched so far has to be drawn first to keep the order
+    target.batcher.flush();
+    target.g.stroke(c);
+    target.g.strokeWeight(stroke);
+    target.g.noFill();
     draw_grid(x, y, r, th, gap);
   }
 
-  //method expected to be implemented - drawing a grid at a location, given
-  //rotation, gap size, and one more variable - the radius. I draw my grids as a
-  //circle, because they rotate, so I don't have to apply more logic for a
-  //rotated grid, and it behaves as quite a nicely isolated unit.
-  protected abstract void draw_grid(float x, float y, float r, float th, float gap);
+  //method expected to be implemented - tracing a grid into the sink around
+  //the origin, given gap size, and one more variable - the radius. I draw my
+  //grids as a circle, because they rotate, so I don't have to apply more logic
+  //for a rotated grid, and it behaves as quite a nicely isolated unit.
+  protected abstract void trace(float r, float gap);
+
+  //whether the grid can be stored in the GeometryCache. grids made of huge
+  //arcs would have to be tessellated into far too many lines
+  boolean cacheable() {
+    return true;
+  }
+
+  //method which can be implemented to trace only the part of a grid that is
+  //on screen, given the screen as a quadrilateral in the grid's frame. Grids
+  //that do implement it should also return true from clippable
+  protected void trace_view(float[] view, float gap) {
+  }
+
+  boolean clippable() {
+    return false;
+  }
+
+  //the angles of the families of lines y = k * gap that make up the grid, if
+  //it is made up of them, for the RasterEngine
+  float[] families() {
+    return null;
+  }
+
+  //whether the RasterEngine can draw the grid as a polar grid
+  boolean polar() {
+    return false;
+  }
+
+  //the wave vectors of the lowest frequencies the grid repeats with, before
+  //it is rotated, for the MoirePreview. They are put into out as x and y
+  //pairs, and the number of them is given. A family of lines y = k * gap
+  //repeats along its normal every gap. grids that don't repeat give 0
+  int waves(float gap, float[] out) {
+    float[] families = families();
+    if (families == null) {
+      return 0;
+    }
+    for (int i = 0; i < families.length; i++) {
+      out[2 * i] = -(float)sin(families[i]) / gap;
+      out[2 * i + 1] = (float)cos(families[i]) / gap;
+    }
+    return families.length;
+  }
+
+  //draw the grid with the RasterEngine if it is on and can, returning whether
+  //it did. The engine needs a pixel of the target to be a pixel of the screen
+  protected boolean draw_raster(float x, float y, float th, float gap, float stroke, int c) {
+    if (!raster || (families() == null && !polar()) || !target.is_pixel_exact()) {
+      return false;
+    }
+    target.batcher.flush();
+    //the engine works in the pixels of the target, which start at its corner
+    if (polar()) {
+      RasterEngine.draw_polar(target.g, type, x - target.left, y - target.top, th, gap, stroke, c, target.screen_width);
+    } else {
+      RasterEngine.draw_lines(target.g, x - target.left, y - target.top, th, gap, stroke, c, families());
+    }
+    return true;
+  }
+
+  //whether the grid can be traced into a batch, which is the case if it can
+  //be cut into lines or the batch can hold arcs as they are
+  boolean batchable() {
+    return cacheable() || target.batcher.holds_arcs();
+  }
+
+  //start gathering grids drawn to the screen into batches. grids are only
+  //drawn when their stroke changes or the batch ends, so nothing else may be
+  //drawn in between
+  public static void begin_batch() {
+    screen.begin_batch();
+  }
+
+  public static void end_batch() {
+    screen.end_batch();
+  }
+
+  //draw the grids in gridtypes to some other graphics, such as an offscreen
+  //layer the size of the screen
+  public static void set_target(PGraphics g) {
+    screen.set_graphics(g);
+  }
+
+  //go back to drawing to the PApplet
+  public static void reset_target() {
+    screen.set_graphics(parent.g);
+  }
+
+  //where a set of grids draws to - some graphics covering a rectangle of the
+  //screen, along with everything needed to draw to it
+  static class Target {
+    PGraphics g;
+    //the size of the screen, and the rectangle of it the graphics covers
+    int screen_width, screen_height;
+    int left, top, width, height;
+    //sink which draws straight to the graphics
+    LineSink immediate;
+    //the sink batching grids (one for each kind of renderer), and whether a
+    //batch has been opened around several grids
+    BatchSink batcher, path_batch, shape_batch;
+    boolean batch_open;
+    //the number of segments submitted since the counter was last reset, in
+    //all and by each type of grid
+    int segments;
+    int[] type_segments = new int[RADIALGRID + 1];
+    //time spent stroking batches, shared out between the types of grid in
+    //each batch by how many segments they put in it
+    long[] type_stroke_ns = new long[RADIALGRID + 1];
+    long stroke_ns;
+    //the number of lattice units visited since the counter was last reset
+    int cells;
+
+    Target(PGraphics g, int screen_width, int screen_height, int left, int top, int width, int height) {
+      this.screen_width = screen_width;
+      this.screen_height = screen_height;
+      this.left = left;
+      this.top = top;
+      this.width = width;
+      this.height = height;
+      immediate = new ImmediateSink(this);
+      path_batch = new PathBatch(this);
+      shape_batch = new ShapeBatch(this);
+      batcher = shape_batch;
+      set_graphics(g);
+    }
+
+    void set_graphics(PGraphics g) {
+      batcher.flush();
+      this.g = g;
+      batcher = g instanceof PGraphicsJava2D ? path_batch : shape_batch;
+    }
+
+    void begin_batch() {
+      batch_open = true;
+    }
+
+    //whether a pixel of the graphics is a pixel of the screen
+    boolean is_pixel_exact() {
+      return g != null && g.width == width && g.height == height;
+    }
+
+    //get the radius required to fill the target's rectangle from a point
+    float radius(float x, float y) {
+      return max(new float[] {dist(x, y, left, top), 
+        dist(x, y, left, top + height), 
+        dist(x, y, left + width, top + height), 
+        dist(x, y, left + width, top)});
+    }
+
+    void end_batch() {
+      batcher.flush();
+      batch_open = false;
+    }
+  }
+
+  //draw a grid at a location, given rotation. Position and rotation are only
+  //applied here, so a cached lattice can be replayed wherever the grid is
+  protected void draw_grid(float x, float y, float r, float th, float gap) {
+    PGraphics g = target.g;
+    g.pushMatrix();
+    g.translate(x, y);
+    g.rotate(th);
+    trace_grid(target.immediate, x, y, r, th, gap);
+    g.popMatrix();
+  }
+
+  //trace the grid into a given sink, only tracing what is on screen if the
+  //grid is clipped. Otherwise the whole lattice is replayed from the
+  //GeometryCache, if it can be stored there
+  private void trace_grid(LineSink s, float x, float y, float r, float th, float gap) {
+    if (clip && clippable()) {
+      sink = s;
+      ox = 0;
+      oy = 0;
+      to_view(x, y, th);
+      trace_view(view, gap);
+    } else if (GEOMETRY_CACHE_ENABLED && cacheable()) {
+      GeometryCache.get(this, r, gap).replay(s);
+    } else {
+      trace_into(s, r, gap);
+    }
+  }
+
+  //trace the grid at x, y rotated by th into a given sink, with as little as
+  //possible off the target's rectangle whether or not grids are clipped, as
+  //for exporting. The sink is given geometry in the grid's frame
+  void trace_page(LineSink s, float x, float y, float th, float gap) {
+    if (clippable()) {
+      sink = s;
+      ox = 0;
+      oy = 0;
+      to_view(x, y, th);
+      trace_view(view, gap);
+    } else {
+      trace_into(s, target.radius(x, y), gap);
+    }
+  }
+
+  //trace the grid into a given sink
+  void trace_into(LineSink s, float r, float gap) {
+    sink = s;
+    ox = 0;
+    oy = 0;
+    trace(r, gap);
+  }
+
+  //find the corners of the target's rectangle of the screen (with a margin,
+  //so that thick lines just outside still show) in the frame of a grid at x, y
+  //rotated by th
+  private void to_view(float x, float y, float th) {
+    float m = VIEWPORT_CLIP_MARGIN;
+    float c = (float)cos(th);
+    float s = (float)sin(th);
+    float x0 = target.left - m, y0 = target.top - m;
+    float x1 = target.left + target.width + m, y1 = target.top + target.height + m;
+    float[] corners = {x0, y0, x1, y0, x1, y1, x0, y1};
+    for (int i = 0; i < 8; i += 2) {
+      float dx = corners[i] - x;
+      float dy = corners[i + 1] - y;
+      view[i] = dx * c + dy * s;
+      view[i + 1] = -dx * s + dy * c;
+    }
+  }
+
+  //find the range of one coordinate over the part of a convex quadrilateral
+  //where the other coordinate is between a and b. if u is 0, x is restricted
+  //and the range of y is found, and if u is 1 it is the other way round. the
+  //range is left in lo and hi, returning false if it is empty
+  protected boolean span(float[] poly, int u, float a, float b) {
+    int v = 1 - u;
+    lo = Float.POSITIVE_INFINITY;
+    hi = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < 8; i += 2) {
+      float pu = poly[i + u], pv = poly[i + v];
+      if (pu >= a && pu <= b) {
+        lo = min(lo, pv);
+        hi = max(hi, pv);
+      }
+      //check where the edge to the next corner crosses either bound
+      int j = (i + 2) % 8;
+      float qu = poly[j + u], qv = poly[j + v];
+      for (int k = 0; k < 2; k++) {
+        float bound = k == 0 ? a : b;
+        if ((pu - bound) * (qu - bound) < 0) {
+          float cv = pv + (bound - pu) / (qu - pu) * (qv - pv);
+          lo = min(lo, cv);
+          hi = max(hi, cv);
+        }
+      }
+    }
+    return lo <= hi;
+  }
+
+  //trace the family of lines y = k * gap, rotated by the angle with cosine c
+  //and sine s, clipped to the view
+  protected void trace_lines(float[] view, float gap, float c, float s) {
+    float ymin = Float.POSITIVE_INFINITY, ymax = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < 8; i += 2) {
+      family[i] = view[i] * c + view[i + 1] * s;
+      family[i + 1] = -view[i] * s + view[i + 1] * c;
+      ymin = min(ymin, family[i + 1]);
+      ymax = max(ymax, family[i + 1]);
+    }
+    for (int k = (int)ceil(ymin / gap); k <= (int)floor(ymax / gap); k++) {
+      float y = k * gap;
+      if (span(family, 1, y, y)) {
+        line(lo * c - y * s, lo * s + y * c, hi * c - y * s, hi * s + y * c);
+      }
+    }
+  }
+
+  //get the number of segments submitted since the last reset
+  public static int get_segments() {
+    return screen.segments;
+  }
+
+  //get the number of segments a type of grid submitted since the last reset
+  public static int get_segments(int type) {
+    return screen.type_segments[type];
+  }
+
+  //get the time spent stroking batches of a type of grid since the last
+  //reset. Grids that aren't batched are stroked as they are traced
+  public static long get_stroke_ns(int type) {
+    return screen.type_stroke_ns[type];
+  }
+
+  //get the time spent stroking batches of all grids since the last reset
+  public static long get_stroke_ns() {
+    return screen.stroke_ns;
+  }
+
+  //get the number of units of lattices visited since the last reset
+  public static int get_cells() {
+    return screen.cells;
+  }
+
+  //the graphics a set of grids draws to
+  public static PGraphics get_graphics(GridDrawer[] set) {
+    return set[0].target.g;
+  }
+
+  //add the counts of a set drawing somewhere else to those of the screen,
+  //resetting the set's, so that grids drawn into layers still show up. Not
+  //to be called while the set is drawing
+  public static void add_segments(GridDrawer[] set) {
+    Target t = set[0].target;
+    screen.segments += t.segments;
+    screen.cells += t.cells;
+    screen.stroke_ns += t.stroke_ns;
+    for (int i = 0; i < t.type_segments.length; i++) {
+      screen.type_segments[i] += t.type_segments[i];
+      screen.type_stroke_ns[i] += t.type_stroke_ns[i];
+    }
+    t.segments = 0;
+    t.cells = 0;
+    t.stroke_ns = 0;
+    Arrays.fill(t.type_segments, 0);
+    Arrays.fill(t.type_stroke_ns, 0);
+  }
+
+  public static void reset_segments() {
+    screen.segments = 0;
+    screen.cells = 0;
+    screen.stroke_ns = 0;
+    Arrays.fill(screen.type_segments, 0);
+    Arrays.fill(screen.type_stroke_ns, 0);
+  }
+
+  //send a line to the sink, offset to the current unit
+  protected void line(float x1, float y1, float x2, float y2) {
+    sink.line(ox + x1, oy + y1, ox + x2, oy + y2);
+  }
+
+  //send an arc to the sink, offset to the current unit
+  protected void arc(float x, float y, float r, float start, float stop) {
+    sink.arc(ox + x, oy + y, r, start, stop);
+  }
 
   //public method to draw, defaulting with colour
   public void draw(float x, float y, float th, float gap, float stroke) {
     draw(x, y, th, gap, stroke, parent.color(255));
   }
 
-  //public method to draw, given colour
+  //public method to draw, given colour. while the TileRenderer is recording,
+  //grids drawing to the screen are recorded to be drawn in tiles instead
   public void draw(float x, float y, float th, float gap, float stroke, int c) {
-    float r = get_radius(x, y);
+    if (target == screen && TileRenderer.is_recording()) {
+      TileRenderer.record(type, x, y, th, gap, stroke, c);
+      return;
+    }
+    float r = target.radius(x, y);
+    int before = target.segments;
     draw_grid(x, y, r, th, gap, stroke, c);
+    target.type_segments[type] += target.segments - before;
   }
 
   //get radius required to fill the screen from a point, as talked about
@@ -49,92 +457,341 @@ public abstract class GridDrawer implements GridConstants {
       dist(x, y, parent.width, 0)});
   }
 
+  //the default sink, which just passes geometry on to the graphics
+  private static class ImmediateSink implements LineSink {
+    private Target t;
+
+    ImmediateSink(Target t) {
+      this.t = t;
+    }
+
+    public void line(float x1, float y1, float x2, float y2) {
+      t.segments++;
+      t.g.line(x1, y1, x2, y2);
+    }
+
+    public void arc(float x, float y, float r, float start, float stop) {
+      t.segments++;
+      t.g.arc(x, y, 2 * r, 2 * r, start, stop);
+    }
+  }
+
+  //a sink which cuts arcs up into short lines, for sinks that can only hold
+  //lines
+  static abstract class SegmentSink implements LineSink {
+    public void arc(float x, float y, float r, float start, float stop) {
+      int n = max(GEOMETRY_CACHE_ARC_MIN_SEGMENTS, (int)ceil(r * abs(stop - start) / GEOMETRY_CACHE_ARC_SEGMENT_LENGTH));
+      float step = (stop - start) / n;
+      float px = x + r * (float)cos(start);
+      float py = y + r * (float)sin(start);
+      for (int i = 1; i <= n; i++) {
+        float a = start + i * step;
+        float nx = x + r * (float)cos(a);
+        float ny = y + r * (float)sin(a);
+        line(px, py, nx, ny);
+        px = nx;
+        py = ny;
+      }
+    }
+  }
+
+  //a sink which gathers the lines of any number of grids sharing a stroke, in
+  //screen coordinates, so that they can all be drawn at once
+  private static abstract class BatchSink extends SegmentSink {
+    protected Target t;
+    //transformation of the grid currently being traced
+    protected float x, y, th, cos_th = 1, sin_th = 0;
+    //stroke of the batch
+    protected int colour;
+    protected float weight;
+    private boolean open;
+    //segments each type of grid has put into the open batch
+    int[] pending = new int[RADIALGRID + 1];
+
+    //start a batch, add a line in screen coordinates, and draw a batch
+    abstract void start();
+    abstract void segment(float x1, float y1, float x2, float y2);
+    abstract void finish();
+
+    BatchSink(Target t) {
+      this.t = t;
+    }
+
+    boolean holds_arcs() {
+      return false;
+    }
+
+    //set the stroke of the batch, drawing what there is if it changes
+    void style(int colour, float weight) {
+      if (open && (colour != this.colour || weight != this.weight)) {
+        flush();
+      }
+      this.colour = colour;
+      this.weight = weight;
+    }
+
+    void transform(float x, float y, float th) {
+      this.x = x;
+      this.y = y;
+      this.th = th;
+      cos_th = (float)cos(th);
+      sin_th = (float)sin(th);
+    }
+
+    //make sure there is a batch to add to, setting its stroke when it starts
+    protected void open() {
+      if (!open) {
+        t.g.stroke(colour);
+        t.g.strokeWeight(weight);
+        t.g.noFill();
+        start();
+        open = true;
+      }
+      t.segments++;
+    }
+
+    public void line(float x1, float y1, float x2, float y2) {
+      open();
+      segment(x + x1 * cos_th - y1 * sin_th, y + x1 * sin_th + y1 * cos_th, 
+        x + x2 * cos_th - y2 * sin_th, y + x2 * sin_th + y2 * cos_th);
+    }
+
+    void flush() {
+      if (open) {
+        long start = System.nanoTime();
+        finish();
+        long ns = System.nanoTime() - start;
+        t.stroke_ns += ns;
+        int total = 0;
+        for (int n : pending) {
+          total += n;
+        }
+        for (int i = 0; i < pending.length; i++) {
+          if (pending[i] > 0) {
+            t.type_stroke_ns[i] += ns * pending[i] / total;
+            pending[i] = 0;
+          }
+        }
+        open = false;
+      }
+    }
+  }
+
+  //batch for any renderer, as one shape of LINES
+  private static class ShapeBatch extends BatchSink {
+    ShapeBatch(Target t) {
+      super(t);
+    }
+
+    void start() {
+      t.g.beginShape(LINES);
+    }
+
+    void segment(float x1, float y1, float x2, float y2) {
+      t.g.vertex(x1, y1);
+      t.g.vertex(x2, y2);
+    }
+
+    void finish() {
+      t.g.endShape();
+    }
+  }
+
+  //batch for the Java2D renderer, as one Path2D. Java2D draws each line of a
+  //shape of LINES separately, but a path is stroked in a single call, and it
+  //can hold arcs without them being cut up
+  private static class PathBatch extends BatchSink {
+    private Path2D.Float path = new Path2D.Float();
+
+    PathBatch(Target t) {
+      super(t);
+    }
+
+    boolean holds_arcs() {
+      return true;
+    }
+
+    void start() {
+      path.reset();
+    }
+
+    void segment(float x1, float y1, float x2, float y2) {
+      path.moveTo(x1, y1);
+      path.lineTo(x2, y2);
+    }
+
+    //Arc2D measures angles in degrees, the other way round to processing
+    public void arc(float ax, float ay, float r, float start, float stop) {
+      open();
+      float cx = x + ax * cos_th - ay * sin_th;
+      float cy = y + ax * sin_th + ay * cos_th;
+      path.append(new Arc2D.Float(cx - r, cy - r, 2 * r, 2 * r, 
+        -degrees(start + th), -degrees(stop - start), Arc2D.OPEN), false);
+    }
+
+    void finish() {
+      Graphics2D g2 = ((PGraphicsJava2D)t.g).g2;
+      g2.setColor(new Color(colour, true));
+      g2.draw(path);
+    }
+  }
+
   //most are pretty self documenting
   //they draw a certain type of grid
 
   private static class SquareGrid extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
+    protected void trace(float r, float gap) {
       float rsq = (float) pow(r, 2);
 
       for (float h = 0; h < r; h += gap) {
         float w = (float) sqrt(rsq - pow(h, 2));
-        parent.line(w, h, -w, h);
-        parent.line(h, w, h, -w);
-        parent.line(w, -h - gap, -w, -h - gap);
-        parent.line(-h - gap, w, -h - gap, -w);
+        line(w, h, -w, h);
+        line(h, w, h, -w);
+        line(w, -h - gap, -w, -h - gap);
+        line(-h - gap, w, -h - gap, -w);
       }
-      parent.popMatrix();
+    }
+
+    //horizontal and vertical lines
+    protected void trace_view(float[] view, float gap) {
+      trace_lines(view, gap, 1, 0);
+      trace_lines(view, gap, 0, 1);
+    }
+
+    private static final float[] FAMILIES = {0, HALF_PI};
+    float[] families() {
+      return FAMILIES;
+    }
+
+    boolean clippable() {
+      return true;
     }
   }
 
   private static class ConcentricGrid extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
-      parent.noFill();
+    protected void trace(float r, float gap) {
       for (float cr = 0; cr < r; cr += gap) {
-        parent.arc(0, 0, 2 * cr, 2 * cr, 0, TWO_PI);
+        arc(0, 0, cr, 0, TWO_PI);
       }
-      parent.popMatrix();
+    }
+
+    boolean cacheable() {
+      return false;
+    }
+
+    boolean polar() {
+      return true;
     }
   }
 
   private static class RadialGrid extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
-
+    protected void trace(float r, float gap) {
       float angle_gap = PI / (int)gap;
 
       for (int i = 0; i < gap * 2; i++) {
-        parent.rotate(angle_gap);
-        parent.line(0, 0, 0, r);
+        float a = (i + 1) * angle_gap;
+        line(0, 0, -r * (float)sin(a), r * (float)cos(a));
       }
+    }
 
-      parent.popMatrix();
+    boolean polar() {
+      return true;
     }
   }
 
   //abstract for drawing an orthogonal grid with a defined grid unit. This
-  //abtractly implement draw_grid, leaving a concrete subclass to only implement
+  //abtractly implement trace, leaving a concrete subclass to only implement
   //draw_unit, the new abstract method
   abstract private static class SingleGrid extends GridDrawer {
     float xstep, ystep;
     abstract void draw_unit(float gap);
-    public void draw_grid(float x, float y, float r, float th, float gap) {      
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
+    //set xstep and ystep for a gap size
+    abstract void set_steps(float gap);
+
+    protected void trace(float r, float gap) {
+      set_steps(gap);
+      trace_cells(r, gap, false);
+    }
+
+    protected void trace_view(float[] view, float gap) {
+      set_steps(gap);
+      view_cells(0, 0, view, gap);
+    }
+
+    //a lattice of units repeats along each axis every step
+    int waves(float gap, float[] out) {
+      set_steps(gap);
+      out[0] = 1 / xstep;
+      out[1] = 0;
+      out[2] = 0;
+      out[3] = 1 / ystep;
+      return 2;
+    }
+
+    boolean clippable() {
+      return true;
+    }
+
+    //trace only the units which can reach the view, with the lattice origin
+    //at (bx, by). No unit strays further than one gap outside its cell, so
+    //each column is widened by a gap before finding its extent in the view
+    void view_cells(float bx, float by, float[] view, float gap) {
+      float xmin = Float.POSITIVE_INFINITY, xmax = Float.NEGATIVE_INFINITY;
+      for (int i = 0; i < 8; i += 2) {
+        xmin = min(xmin, view[i]);
+        xmax = max(xmax, view[i]);
+      }
+      int i0 = (int)ceil((xmin - gap - bx) / xstep) - 1;
+      int i1 = (int)floor((xmax + gap - bx) / xstep);
+      for (int i = i0; i <= i1; i++) {
+        float cx = bx + i * xstep;
+        if (!span(view, 0, cx - gap, cx + xstep + gap)) {
+          continue;
+        }
+        int j0 = (int)ceil((lo - gap - by) / ystep) - 1;
+        int j1 = (int)floor((hi + gap - by) / ystep);
+        for (int j = j0; j <= j1; j++) {
+          unit(cx, by + j * ystep, gap);
+        }
+      }
+      ox = 0;
+      oy = 0;
+    }
+
+    //draw a unit with its cell's corner at (x, y), counting it
+    void unit(float x, float y, float gap) {
+      ox = x;
+      oy = y;
+      draw_unit(gap);
+      target.cells++;
+    }
+
+    //trace every unit of the lattice that can reach the circle of radius r,
+    //and if dual those of a second lattice offset by half a cell. A cell can
+    //only matter if its corner nearest the centre is within reach of the
+    //circle, so each column only goes up to its chord height h, plus how far
+    //a unit can stray from its cell. Both lattices share the same cells
+    void trace_cells(float r, float gap, boolean dual) {
+      float dx = dual ? xstep / 2 : 0;
+      float dy = dual ? ystep / 2 : 0;
+      float reach = r + gap + (float)Math.hypot(dx, dy);
       for (float xi = 0; xi < r; xi += xstep) {
-        float h = (float) sqrt(pow(r, 2) - pow(xi, 2));
-        for (float yi = 0; yi < r; yi += ystep) {
-          parent.pushMatrix();
-          parent.translate(xi, yi);
-          draw_unit(gap);
-          parent.popMatrix();
-
-          parent.pushMatrix();
-          parent.translate(-xi - xstep, yi);
-          draw_unit(gap);
-          parent.popMatrix();
-
-          parent.pushMatrix();
-          parent.translate(xi, -yi - ystep);
-          draw_unit(gap);
-          parent.popMatrix();
-
-          parent.pushMatrix();
-          parent.translate(-xi - xstep, -yi - ystep);
-          draw_unit(gap);
-          parent.popMatrix();
+        float h = (float) sqrt(pow(reach, 2) - pow(xi, 2));
+        for (float yi = 0; yi < r && yi < h; yi += ystep) {
+          unit(xi, yi, gap);
+          unit(-xi - xstep, yi, gap);
+          unit(xi, -yi - ystep, gap);
+          unit(-xi - xstep, -yi - ystep, gap);
+          if (dual) {
+            unit(xi + dx, yi + dy, gap);
+            unit(-xi - xstep + dx, yi + dy, gap);
+            unit(xi + dx, -yi - ystep + dy, gap);
+            unit(-xi - xstep + dx, -yi - ystep + dy, gap);
+          }
         }
       }
-      parent.popMatrix();
+      ox = 0;
+      oy = 0;
     }
   }
 
@@ -142,230 +799,257 @@ public abstract class GridDrawer implements GridConstants {
   //patterns can be implemented as an overlay of two orthogonal grids. an
   //example is a hexagonal grid, which is implemented with this private static class.
   abstract private static class DualGrid extends SingleGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      //rotation, and therefore translation as rotation depends on that has to be
-      //handled by dual grid as translation needs to occur after rotation
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th); 
-      super.draw_grid(0, 0, r, 0, gap);
-      parent.translate(xstep / 2, ystep / 2);
-      super.draw_grid(0, 0, r, 0, gap);
-      parent.popMatrix();
+    protected void trace(float r, float gap) {
+      //the second lattice is offset by half a unit in each direction
+      set_steps(gap);
+      trace_cells(r, gap, true);
+    }
+
+    protected void trace_view(float[] view, float gap) {
+      set_steps(gap);
+      view_cells(0, 0, view, gap);
+      view_cells(xstep / 2, ystep / 2, view, gap);
+    }
+
+    //the two offset lattices together repeat along the diagonals of a unit
+    int waves(float gap, float[] out) {
+      set_steps(gap);
+      out[0] = 1 / xstep;
+      out[1] = 1 / ystep;
+      out[2] = 1 / xstep;
+      out[3] = -1 / ystep;
+      return 2;
     }
   }
 
   private static class HexagonalGrid extends DualGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = 3 * gap;
       ystep = 2 * TRIANGLE_HEIGHT * gap;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.line(-0.5f * gap, TRIANGLE_HEIGHT * gap, 0, 0);
-      parent.line(0, 0, gap, 0);
-      parent.line(gap, 0, 1.5f * gap, TRIANGLE_HEIGHT * gap);
+      line(-0.5f * gap, TRIANGLE_HEIGHT * gap, 0, 0);
+      line(0, 0, gap, 0);
+      line(gap, 0, 1.5f * gap, TRIANGLE_HEIGHT * gap);
     }
   }
 
   private static class TriangleGrid extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
+    //the three rotations of the line families
+    private static final float[] COS = new float[3], SIN = new float[3];
+    static {
+      for (int i = 0; i < 3; i++) {
+        COS[i] = (float)cos((i + 1) * TWO_PI / 3);
+        SIN[i] = (float)sin((i + 1) * TWO_PI / 3);
+      }
+    }
+
+    protected void trace(float r, float gap) {
       float rsq = (float) pow(r, 2);
 
       for (float h = 0; h < r; h += gap) {
         float w = (float) sqrt(rsq - pow(h, 2));
-        parent.pushMatrix();
         for (int i = 0; i < 3; i++) {
-          parent.rotate(TWO_PI / 3);
-          parent.line(w, h, -w, h);
-          parent.line(w, -h - gap, -w, -h - gap);
+          rotated_line(i, w, h, -w, h);
+          rotated_line(i, w, -h - gap, -w, -h - gap);
         }
-        parent.popMatrix();
       }
-      parent.popMatrix();
+    }
+
+    protected void trace_view(float[] view, float gap) {
+      for (int i = 0; i < 3; i++) {
+        trace_lines(view, gap, COS[i], SIN[i]);
+      }
+    }
+
+    private static final float[] FAMILIES = {TWO_PI / 3, 2 * TWO_PI / 3, 0};
+    float[] families() {
+      return FAMILIES;
+    }
+
+    boolean clippable() {
+      return true;
+    }
+
+    //send a line rotated into the ith family
+    private void rotated_line(int i, float x1, float y1, float x2, float y2) {
+      line(x1 * COS[i] - y1 * SIN[i], x1 * SIN[i] + y1 * COS[i], 
+        x2 * COS[i] - y2 * SIN[i], x2 * SIN[i] + y2 * COS[i]);
     }
   }
 
   private static class StarGrid extends DualGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = 2 * gap;
       ystep = 4 * TRIANGLE_HEIGHT * gap;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.beginShape();
-      parent.vertex(0, 0);
-      parent.vertex(gap, 0);
-      parent.vertex(gap * 1.5f, gap * TRIANGLE_HEIGHT);
-      parent.vertex(gap, 2 * gap * TRIANGLE_HEIGHT);
-      parent.vertex(0, 2 * gap * TRIANGLE_HEIGHT);
-      parent.vertex(-0.5f * gap, gap * TRIANGLE_HEIGHT);
-      parent.endShape(CLOSE);
+      line(0, 0, gap, 0);
+      line(gap, 0, gap * 1.5f, gap * TRIANGLE_HEIGHT);
+      line(gap * 1.5f, gap * TRIANGLE_HEIGHT, gap, 2 * gap * TRIANGLE_HEIGHT);
+      line(gap, 2 * gap * TRIANGLE_HEIGHT, 0, 2 * gap * TRIANGLE_HEIGHT);
+      line(0, 2 * gap * TRIANGLE_HEIGHT, -0.5f * gap, gap * TRIANGLE_HEIGHT);
+      line(-0.5f * gap, gap * TRIANGLE_HEIGHT, 0, 0);
     }
   }
 
   private static class OctGrid extends SingleGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = gap * (1 + ROOT_TWO);
       ystep = gap * (1 + ROOT_TWO);
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.noFill();
-      parent.beginShape();
-      parent.vertex(0, 0);
-      parent.vertex(-ROOT_TWO / 2 * gap, ROOT_TWO / 2 * gap);
-      parent.vertex(-ROOT_TWO / 2 * gap, gap * (ROOT_TWO / 2 + 1));
-      parent.vertex(0, gap * (ROOT_TWO + 1));
-      parent.vertex(gap, gap * (ROOT_TWO + 1));
-      parent.vertex(gap * (1 + ROOT_TWO / 2), gap * (1 + ROOT_TWO / 2));
-      parent.endShape();
-      parent.line(gap, 0, gap * (1 + ROOT_TWO / 2), gap * ROOT_TWO / 2);
+      line(0, 0, -ROOT_TWO / 2 * gap, ROOT_TWO / 2 * gap);
+      line(-ROOT_TWO / 2 * gap, ROOT_TWO / 2 * gap, -ROOT_TWO / 2 * gap, gap * (ROOT_TWO / 2 + 1));
+      line(-ROOT_TWO / 2 * gap, gap * (ROOT_TWO / 2 + 1), 0, gap * (ROOT_TWO + 1));
+      line(0, gap * (ROOT_TWO + 1), gap, gap * (ROOT_TWO + 1));
+      line(gap, gap * (ROOT_TWO + 1), gap * (1 + ROOT_TWO / 2), gap * (1 + ROOT_TWO / 2));
+      line(gap, 0, gap * (1 + ROOT_TWO / 2), gap * ROOT_TWO / 2);
     }
   }
 
   private static class SquareStarGrid extends SingleGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = gap * 1.5f;
       ystep = gap * 1.5f;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.beginShape();
-      parent.vertex(0, 0);
-      parent.vertex(0, gap);
-      parent.vertex(gap, gap);
-      parent.vertex(gap, 0);
-      parent.endShape(CLOSE);
-      parent.line(gap, gap, 0, gap * 1.5f);
-      parent.line(gap, 0, gap * 1.5f, gap);
+      line(0, 0, 0, gap);
+      line(0, gap, gap, gap);
+      line(gap, gap, gap, 0);
+      line(gap, 0, 0, 0);
+      line(gap, gap, 0, gap * 1.5f);
+      line(gap, 0, gap * 1.5f, gap);
     }
   }
 
   private static class SquareOffsetGrid extends DualGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = gap;
       ystep = gap * 2;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.line(gap, 0, 0, 0);
-      parent.line(0, 0, 0, gap);
+      line(gap, 0, 0, 0);
+      line(0, 0, 0, gap);
     }
   }
 
   private static class CrossGrid extends SingleGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = 3 * gap;
       ystep = 4 * gap;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.beginShape();
-      parent.vertex(gap * 3, 0);
-      parent.vertex(gap * 2, 0);
-      parent.vertex(gap * 2, -gap);
-      parent.vertex(gap, -gap);
-      parent.vertex(gap, 0);
-      parent.vertex(0, 0);
-      parent.vertex(0, 2 * gap);
-      parent.vertex(-gap, 2 * gap);
-      parent.vertex(-gap, 3 * gap);
-      parent.vertex(0, 3 * gap);
-      parent.vertex(0, 4 * gap);
-      parent.endShape();
-
-      parent.beginShape();
-      parent.vertex(0, gap);
-      parent.vertex(gap, gap);
-      parent.vertex(gap, 2 * gap);
-      parent.vertex(2 * gap, 2 * gap);
-      parent.vertex(2 * gap, gap);
-      parent.vertex(3 * gap, gap);
-      parent.endShape();
+      line(gap * 3, 0, gap * 2, 0);
+      line(gap * 2, 0, gap * 2, -gap);
+      line(gap * 2, -gap, gap, -gap);
+      line(gap, -gap, gap, 0);
+      line(gap, 0, 0, 0);
+      line(0, 0, 0, 2 * gap);
+      line(0, 2 * gap, -gap, 2 * gap);
+      line(-gap, 2 * gap, -gap, 3 * gap);
+      line(-gap, 3 * gap, 0, 3 * gap);
+      line(0, 3 * gap, 0, 4 * gap);
+
+      line(0, gap, gap, gap);
+      line(gap, gap, gap, 2 * gap);
+      line(gap, 2 * gap, 2 * gap, 2 * gap);
+      line(2 * gap, 2 * gap, 2 * gap, gap);
+      line(2 * gap, gap, 3 * gap, gap);
     }
   }
 
   private static class CircleGrid extends DualGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = 2 * gap;
       ystep = 2 * gap;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.noFill();
-      parent.arc(0, 0, gap * 2, gap * 2, 0, PI);
+      arc(0, 0, gap, 0, PI);
     }
   }
 
   private static class CircleStarGrid extends DualGrid {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    void set_steps(float gap) {
       xstep = 2 * gap;
       ystep = 4 * TRIANGLE_HEIGHT * gap;
-
-      super.draw_grid(x, y, r, th, gap);
     }
 
     void draw_unit(float gap) {
-      parent.noFill();
-      parent.arc(0, 0, gap * 2, gap * 2, 0, TWO_PI);
+      arc(0, 0, gap, 0, TWO_PI);
     }
   }
 
   private static class LineGrid extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
+    protected void trace(float r, float gap) {
       float rsq = (float) pow(r, 2);
 
       for (float h = 0; h < r; h += gap) {
         float w = (float) sqrt(rsq - pow(h, 2));
-        parent.line(-h - gap, -w, -h - gap, w);
-        parent.line(h, -w, h, w);
+        line(-h - gap, -w, -h - gap, w);
+        line(h, -w, h, w);
       }
-      parent.popMatrix();
+    }
+
+    protected void trace_view(float[] view, float gap) {
+      trace_lines(view, gap, 0, 1);
+    }
+
+    private static final float[] FAMILIES = {HALF_PI};
+    float[] families() {
+      return FAMILIES;
+    }
+
+    boolean clippable() {
+      return true;
     }
   }
 
   private static class TriangleRadial extends GridDrawer {
-    public void draw_grid(float x, float y, float r, float th, float gap) {
+    protected void trace(float r, float gap) {
+    }
+
+    boolean cacheable() {
+      return false;
+    }
+
+    boolean batchable() {
+      return false;
+    }
+
+    boolean polar() {
+      return true;
     }
 
     public void draw_grid(float x, float y, float r, float th, float gap, float stroke, int c) {
-      parent.noStroke();
-      parent.fill(c);
-      parent.pushMatrix();
-      parent.translate(x, y);
-      parent.rotate(th);
+      if (draw_raster(x, y, th, gap, stroke, c)) {
+        return;
+      }
+      target.batcher.flush();
+      PGraphics g = target.g;
+      g.noStroke();
+      g.fill(c);
+      g.pushMatrix();
+      g.translate(x, y);
+      g.rotate(th);
 
-      float stroke_up = new PVector(stroke, parent.width / 2).setMag(r).x;
+      float stroke_up = new PVector(stroke, target.screen_width / 2).setMag(r).x;
 
       float angle_gap = PI / (int)gap;
 
       for (int i = 0; i < gap * 2; i++) {
-        parent.rotate(angle_gap);
-        parent.triangle(0, 0, stroke_up * 2, r, -stroke_up * 2, r);
+        g.rotate(angle_gap);
+        g.triangle(0, 0, stroke_up * 2, r, -stroke_up * 2, r);
       }
 
-      parent.popMatrix();
+      g.popMatrix();
     }
   }
 
@@ -375,9 +1059,9 @@ public abstract class GridDrawer implements GridConstants {
     return gridtypes[n];
   }
 
-  public static void init(PApplet app) {
-    parent = app;
-    gridtypes = new GridDrawer[] {
+  //make a new instance of every type of grid, all drawing to the same target
+  private static GridDrawer[] make_set(Target target) {
+    GridDrawer[] set = new GridDrawer[] {
       new SquareGrid(), 
       new ConcentricGrid(), 
       new TriangleRadial(), 
@@ -393,6 +1077,60 @@ public abstract class GridDrawer implements GridConstants {
       new LineGrid(), 
       new RadialGrid()
     };
+    for (int i = 0; i < set.length; i++) {
+      set[i].type = i;
+      set[i].target = target;
+    }
+    return set;
+  }
+
+  //make a set of grids drawing to some graphics, which cover the rectangle of
+  //the screen at left, top with the size of the graphics. The set can be used
+  //on any one thread, alongside gridtypes and other sets
+  public static GridDrawer[] make_set(PGraphics g, int left, int top) {
+    return make_set(new Target(g, parent.width, parent.height, left, top, g.width, g.height));
+  }
+
+  //make a set of grids drawing the whole of a screen of some size to some
+  //graphics. If the graphics are a different size, the caller has to scale
+  //them to fit
+  public static GridDrawer[] make_screen_set(PGraphics g, int screen_width, int screen_height) {
+    return make_set(new Target(g, screen_width, screen_height, 0, 0, screen_width, screen_height));
+  }
+
+  //get the type of a grid from its class name, as it is serialised, or -1 if
+  //there is no such grid
+  public static int get_type(String name) {
+    for (int i = 0; i < num; i++) {
+      if (gridtypes[i].getClass().getSimpleName().equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  //get the class name of a type of grid, as it is serialised
+  public static String get_name(int type) {
+    return gridtypes[type].getClass().getSimpleName();
+  }
+
+  //statically start a batch for a set of grids, like begin_batch
+  public static void begin_batch(GridDrawer[] set) {
+    set[0].target.begin_batch();
+  }
+
+  public static void end_batch(GridDrawer[] set) {
+    set[0].target.end_batch();
+  }
+
+  public static void init(PApplet app) {
+    parent = app;
+    clip = VIEWPORT_CLIP_ENABLED;
+    batch = BATCH_ENABLED;
+    raster = RASTER_ENABLED;
+    GeometryCache.init();
+    screen = new Target(parent.g, parent.width, parent.height, 0, 0, parent.width, parent.height);
+    gridtypes = make_set(screen);
     num = gridtypes.length;
   }
 }
@@ -2,9 +2,11 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 
 import java.awt.Font;
+import java.io.File;
 
 import processing.core.PApplet;
 import processing.core.PFont;
+import processing.event.Event;
 import processing.event.MouseEvent;
 import processing.event.KeyEvent;
 
@@ -18,6 +20,9 @@ public class Init implements GridConstants {
   private AutoGrid ag; //for auto mode
   private boolean is_auto; //track if auto mode
   private boolean drawnum; //whether to draw number of grids
+  //a show chosen to be played. the file chooser calls back on another thread,
+  //so it is only picked up at the start of the next frame
+  private volatile AutoGrid loaded;
 
   //constructor which does one-off initalisation. This was a fun bug, as if you
   //register methods twice they happen twice
@@ -33,8 +38,17 @@ public class Init implements GridConstants {
     ContainedGrid.init(parent);
     ClickUIElement.init(parent);
     GridDrawer.init(parent);
+    LayerCache.init(parent);
+    RasterEngine.init();
+    TileRenderer.init(parent);
+    SnapshotQueue.init(parent);
+    FrameRecorder.init(parent);
+    Redraw.init(parent);
+    FrameGovernor.init(parent);
+    PerfHud.init(parent);
+    MoirePreview.init(parent);
+    Compositor.init(parent);
     AutoGrid.init(parent);
-    SineVariable.init(parent);
     draw_deltas = false;
     Draggable.init_delta();
     Extendable.init_delta();
@@ -65,22 +79,62 @@ public class Init implements GridConstants {
 
   //called before draw
   public void pre() {
+    //events which came in while the sketch had stopped are handled now, on
+    //the animation thread
+    for (Event e : Redraw.take_deferred()) {
+      if (e instanceof KeyEvent) {
+        keyEvent((KeyEvent)e);
+      } else {
+        mouseEvent((MouseEvent)e);
+      }
+    }
+    if (loaded != null) {
+      ag = loaded;
+      loaded = null;
+      is_auto = true;
+      drawnum = false;
+      Compositor.mode = AUTO_COMPOSITOR_MODE;
+    }
+    //when nothing has changed the last frame is left as it is
+    if (!Redraw.should_draw(is_auto)) {
+      return;
+    }
+    PerfHud.begin();
+    GridDrawer.reset_segments();
+    FrameGovernor.begin();
     parent.background(0);
+    if (TileRenderer.enabled) {
+      TileRenderer.begin();
+    }
     if (is_auto) {
       ag.update();
       ag.draw();
     } else {
       ContainedGrid.draw();
+    }
+    if (TileRenderer.enabled) {
+      TileRenderer.end();
+    }
+    FrameGovernor.end();
+    FrameRecorder.capture();
+    if (!is_auto) {
+      long start = System.nanoTime();
       ClickUIElement.draw();
+      PerfHud.ui_drawn(System.nanoTime() - start);
       print_deltas();
       if (drawnum) {
         text_with_outline(ContainedGrid.get_num_of_grids(), 20, parent.height - 50, 5, 10, parent.color(255), parent.color(0));
       }
     }
+    PerfHud.end();
+    PerfHud.draw();
   }
 
   //handle mouse - basically just passes onto ClickUIElement
   public void mouseEvent(MouseEvent event) {
+    if (Redraw.defer(event)) {
+      return;
+    }
     if (!is_auto) {
       ClickUIElement.mouseEvent(event);
     }
@@ -90,22 +144,41 @@ public class Init implements GridConstants {
   private void print_deltas() {
     if (draw_deltas && ClickUIElement.do_draw) {
       String msg = String.format(
-        "deltas:\nDraggable: %.1f, changing by %.1f\nExtendable: %.1f, changing by %.1f\nRotatable: %.3f, changing by %.3f", 
+        "deltas:\nDraggable: %.1f, changing by %.1f\nExtendable: %.1f, changing by %.1f\nRotatable: %.3f, changing by %.3f\nsegments: %d, cells: %d, clipping %s, batching %s\n%s\n%s\n%s\n%s\n%s\n%s", 
         Draggable.get_delta(), Draggable.get_deltadelta(), 
         Extendable.get_delta(), Extendable.get_deltadelta(), 
-        Rotatable.get_delta(), Rotatable.get_deltadelta());
+        Rotatable.get_delta(), Rotatable.get_deltadelta(), 
+        GridDrawer.get_segments(), GridDrawer.get_cells(), GridDrawer.clip ? "on" : "off", GridDrawer.batch ? "on" : "off", 
+        TileRenderer.get_info(), SnapshotQueue.get_info(), FrameRecorder.get_info(), FrameGovernor.get_info(), MoirePreview.get_info(), Compositor.get_info());
       parent.textFont(f);
       parent.fill(0);
       parent.stroke(0);
-      parent.rect(0, 0, 450, 130);
+      parent.rect(0, 0, 550, 305);
       parent.fill(255);
       parent.stroke(255);
       parent.text(msg, 10, 30);
     }
   }
 
+  //called with the file chosen after pressing u, if there is one
+  public void show_selected(File file) {
+    if (file == null) {
+      return;
+    }
+    AutoGrid show = AutoGrid.from_show(parent.loadStrings(file.getAbsolutePath()));
+    if (show == null) {
+      parent.println(String.format("%s is not a show", file));
+      return;
+    }
+    loaded = show;
+    Redraw.mark();
+  }
+
   //handle a key press
   public void keyEvent(KeyEvent event) {
+    if (Redraw.defer(event)) {
+      return;
+    }
     int keyCode = event.getKeyCode();
     int act = event.getAction();
     if (act == KeyEvent.PRESS) {
@@ -140,6 +213,15 @@ public class Init implements GridConstants {
         case ' ':
           draw_deltas = !draw_deltas;
           break;
+        case 'V':
+          GridDrawer.clip = !GridDrawer.clip;
+          break;
+        case 'B':
+          GridDrawer.batch = !GridDrawer.batch;
+          break;
+        case 'X':
+          GridDrawer.raster = !GridDrawer.raster;
+          break;
         case UP:
         case LEFT:
         case RIGHT:
@@ -147,6 +229,19 @@ public class Init implements GridConstants {
           ClickUIElement.move_delta(keyCode);
           break;
         }
+      } else {
+        //actions exclusive to auto mode
+        switch(keyCode) {
+        case ',':
+          ag.seek(Math.max(0, ag.get_frame() - AUTO_SCRUB_FRAMES));
+          break;
+        case '.':
+          ag.seek(ag.get_frame() + AUTO_SCRUB_FRAMES);
+          break;
+        case 'J':
+          ag.save_show();
+          break;
+        }
       }
 
       //actions desired in both modes, with some conditional execution for
@@ -174,6 +269,39 @@ public class Init implements GridConstants {
         gridval = RADIALGRID;
         break;
 
+      case 'T':
+        TileRenderer.enabled = !TileRenderer.enabled;
+        break;
+      case 'Y':
+        TileRenderer.cycle_threads();
+        break;
+
+      case 'O':
+        FrameRecorder.toggle();
+        break;
+      case 'K':
+        Redraw.toggle();
+        break;
+      case 'G':
+        FrameGovernor.enabled = !FrameGovernor.enabled;
+        break;
+      case 'H':
+        PerfHud.toggle();
+        break;
+      case 'M':
+        MoirePreview.enabled = !MoirePreview.enabled;
+        break;
+      case 'C':
+        Compositor.cycle_mode();
+        break;
+      case 'L':
+        PerfHud.toggle_csv();
+        break;
+
+      case 'U':
+        parent.selectInput("choose a show to play", "show_selected", null, this);
+        break;
+
       case 'F':
         if (is_auto) {
           ag.serialise_to_file();
@@ -197,18 +325,24 @@ public class Init implements GridConstants {
         } else {
           is_auto = true;
           drawnum = false;
+          Compositor.mode = AUTO_COMPOSITOR_MODE;
           ag = new AutoGrid(SQUAREGRID);
         }
         break;
       }
 
       if (gridval >= 0 && gridval < GridDrawer.num) {
-        if (is_auto) {
+        if (is_auto && event.isShiftDown()) {
+          ag.add_layer(gridval);
+        } else if (is_auto) {
           ag = new AutoGrid(gridval);
         } else {
           new ContainedGrid(gridval);
         }
       }
+      //any key may change what is on screen, so once it has been handled the
+      //screen is marked
+      Redraw.mark();
     }
   }
 }
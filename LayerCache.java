@@ -0,0 +1,102 @@
+import static processing.core.PApplet.min;
+
+import java.util.ArrayList;
+import java.util.List;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+//a cache of the grids that aren't being manipulated. Normally only one grid
+//is changed at a time, but all of them are redrawn every frame. So the grids
+//below the active one are kept drawn in one offscreen layer, and those above
+//it in another. Each frame the layers are put on screen around a freshly
+//drawn active grid, and a layer is only redrawn if one of its grids changed,
+//or grids were added, removed or became active.
+public class LayerCache implements GridConstants {
+  private static PApplet parent;
+  private static PGraphics below, above;
+  //the grids each layer was drawn with
+  private static ArrayList<ContainedGrid> below_grids, above_grids;
+  public static boolean enabled;
+
+  public static void init(PApplet app) {
+    parent = app;
+    below = parent.createGraphics(parent.width, parent.height);
+    above = parent.createGraphics(parent.width, parent.height);
+    below_grids = null;
+    above_grids = null;
+    enabled = LAYER_CACHE_ENABLED;
+  }
+
+  //draw the grids, with the given grid (which may be null) drawn directly
+  public static void draw(ArrayList<ContainedGrid> grids, ContainedGrid active) {
+    //the TileRenderer draws in its own tiles
+    if (!enabled || TileRenderer.is_recording()) {
+      if (FrameGovernor.is_reduced() && !TileRenderer.is_recording()) {
+        FrameGovernor.draw(grids);
+      } else {
+        draw_grids(grids);
+      }
+      return;
+    }
+    //with no active grid, everything can be kept below
+    int index = active == null ? grids.size() : grids.indexOf(active);
+    List<ContainedGrid> under = grids.subList(0, index);
+    List<ContainedGrid> over = grids.subList(min(index + 1, grids.size()), grids.size());
+
+    if (is_stale(under, below_grids)) {
+      render(below, under);
+      below_grids = new ArrayList<ContainedGrid>(under);
+    }
+    if (is_stale(over, above_grids)) {
+      render(above, over);
+      above_grids = new ArrayList<ContainedGrid>(over);
+    }
+
+    if (!under.isEmpty()) {
+      parent.image(below, 0, 0);
+    }
+    if (active != null && FrameGovernor.is_reduced()) {
+      FrameGovernor.draw(grids.subList(index, index + 1));
+    } else if (active != null) {
+      GridDrawer.begin_batch();
+      active.draw_grid();
+      GridDrawer.end_batch();
+    }
+    if (!over.isEmpty()) {
+      parent.image(above, 0, 0);
+    }
+  }
+
+  //a layer needs redrawing if it holds different grids, or any have changed
+  private static boolean is_stale(List<ContainedGrid> grids, ArrayList<ContainedGrid> drawn) {
+    if (!grids.equals(drawn)) {
+      return true;
+    }
+    for (ContainedGrid g : grids) {
+      if (g.has_changed()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //draw grids to a cleared layer
+  private static void render(PGraphics layer, List<ContainedGrid> grids) {
+    layer.beginDraw();
+    layer.clear();
+    GridDrawer.set_target(layer);
+    draw_grids(grids);
+    GridDrawer.reset_target();
+    layer.endDraw();
+  }
+
+  //draw grids to the current target, in one batch so that neighbouring grids
+  //with the same stroke are drawn together
+  private static void draw_grids(List<ContainedGrid> grids) {
+    GridDrawer.begin_batch();
+    for (ContainedGrid g : grids) {
+      g.draw_grid();
+    }
+    GridDrawer.end_batch();
+  }
+}
@@ -0,0 +1,8 @@
+//line sink interface - somewhere a grid can send its geometry. GridDrawer
+//traces every lattice into one of these, so the same lattice can be drawn
+//straight to the screen or stored away to be drawn later
+public interface LineSink {
+  public void line(float x1, float y1, float x2, float y2);
+  //a circular arc of radius r around (x, y), from start to stop
+  public void arc(float x, float y, float r, float start, float stop);
+}
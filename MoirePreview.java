@@ -0,0 +1,167 @@
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+
+import java.util.Arrays;
+import processing.core.PApplet;
+import processing.core.PImage;
+
+//a cheap preview of the moire between grids. Where two grids repeat with
+//nearly the same wave vector, the pattern they make together is a slow beat
+//whose wave vector is the difference of theirs, so it can be worked out
+//straight from their gap sizes and rotations without drawing any lines. While
+//a grid is being dragged (or all the time in auto mode), only those beats
+//between it and the other grids are drawn, at a low resolution and stretched
+//to fit. Grids that don't repeat, like the polar ones, have no beats to show,
+//so when there are none the grids are drawn as normal.
+public class MoirePreview implements GridConstants {
+  private static PApplet parent;
+  public static boolean enabled;
+  private static PImage img;
+  //the wave vectors of a grid, and of the one it is paired with
+  private static float[] ka = new float[9], kb = new float[9];
+  //each beat's wave vector and phase in cycles, and its colour
+  private static float[] bx = new float[16], by = new float[16], phase = new float[16];
+  private static float[] br = new float[16], bg = new float[16], bb = new float[16];
+  private static int beats;
+  //each beat's cos and sin along a row, and how they turn every cell
+  private static float[] c = new float[16], s = new float[16], dc = new float[16], ds = new float[16];
+
+  public static void init(PApplet app) {
+    parent = app;
+    enabled = MOIRE_PREVIEW_ENABLED;
+    int cell = MOIRE_PREVIEW_CELL;
+    img = parent.createImage((parent.width + cell - 1) / cell, (parent.height + cell - 1) / cell, RGB);
+    beats = 0;
+  }
+
+  //whether grids being dragged should be previewed
+  public static boolean is_previewing() {
+    return enabled && ClickUIElement.is_dragging();
+  }
+
+  //draw the beats between one grid in a scene and all the others. gives
+  //false, having drawn nothing, if there are none
+  public static boolean draw(Scene scene, int selected) {
+    beats = 0;
+    for (int j = 0; j < scene.size(); j++) {
+      if (j != selected) {
+        add_beats(scene, selected, j);
+      }
+    }
+    if (beats == 0) {
+      return false;
+    }
+    render();
+    parent.image(img, 0, 0, img.width * MOIRE_PREVIEW_CELL, img.height * MOIRE_PREVIEW_CELL);
+    return true;
+  }
+
+  //the wave vectors of a grid of a scene, rotated and with their phase at the
+  //origin, giving how many there are. each takes three places in out
+  private static int world_waves(Scene scene, int i, float[] out) {
+    int n = GridDrawer.get_grid(scene.type[i]).waves(scene.gap[i], out);
+    float ct = (float)cos(scene.th[i]), st = (float)sin(scene.th[i]);
+    //going backwards so the pairs can be spread out into threes in place
+    for (int k = n - 1; k >= 0; k--) {
+      float x = out[2 * k], y = out[2 * k + 1];
+      float wx = x * ct - y * st, wy = x * st + y * ct;
+      out[3 * k] = wx;
+      out[3 * k + 1] = wy;
+      //the grid's lines go through its centre
+      out[3 * k + 2] = -(wx * scene.x[i] + wy * scene.y[i]);
+    }
+    return n;
+  }
+
+  //add the beats between two grids, for every pair of their waves which are
+  //close enough to beat slowly. Waves are the same pointing either way, so
+  //whichever of their difference or sum is shorter is used
+  private static void add_beats(Scene scene, int a, int b) {
+    int na = world_waves(scene, a, ka);
+    int nb = world_waves(scene, b, kb);
+    for (int i = 0; i < na; i++) {
+      for (int j = 0; j < nb; j++) {
+        float sign = ka[3 * i] * kb[3 * j] + ka[3 * i + 1] * kb[3 * j + 1] < 0 ? -1 : 1;
+        float x = ka[3 * i] - sign * kb[3 * j];
+        float y = ka[3 * i + 1] - sign * kb[3 * j + 1];
+        float lim = MOIRE_PREVIEW_MAX_BEAT * Math.min(mag(ka, i), mag(kb, j));
+        if (x * x + y * y > lim * lim) {
+          continue;
+        }
+        if (beats == bx.length) {
+          grow();
+        }
+        bx[beats] = x;
+        by[beats] = y;
+        phase[beats] = ka[3 * i + 2] - sign * kb[3 * j + 2];
+        int ca = scene.c[a], cb = scene.c[b];
+        br[beats] = (((ca >> 16) & 0xff) + ((cb >> 16) & 0xff)) / 2f;
+        bg[beats] = (((ca >> 8) & 0xff) + ((cb >> 8) & 0xff)) / 2f;
+        bb[beats] = ((ca & 0xff) + (cb & 0xff)) / 2f;
+        beats++;
+      }
+    }
+  }
+
+  private static float mag(float[] k, int i) {
+    return (float)Math.hypot(k[3 * i], k[3 * i + 1]);
+  }
+
+  private static void grow() {
+    int n = beats * 2;
+    bx = Arrays.copyOf(bx, n);
+    by = Arrays.copyOf(by, n);
+    phase = Arrays.copyOf(phase, n);
+    br = Arrays.copyOf(br, n);
+    bg = Arrays.copyOf(bg, n);
+    bb = Arrays.copyOf(bb, n);
+    c = new float[n];
+    s = new float[n];
+    dc = new float[n];
+    ds = new float[n];
+  }
+
+  //work out the beats at the middle of every cell. Where two grids' lines
+  //line up the gaps between them show, so it is dark, and where they are
+  //out of step they fill the gaps in, so it is bright. Along a row each beat
+  //only turns by the same angle every cell, so rather than a cos for every
+  //cell, its cos and sin are turned with a rotation
+  private static void render() {
+    int cell = MOIRE_PREVIEW_CELL;
+    float tau = TWO_PI;
+    for (int k = 0; k < beats; k++) {
+      float a = tau * bx[k] * cell;
+      dc[k] = (float)cos(a);
+      ds[k] = (float)sin(a);
+    }
+    img.loadPixels();
+    for (int j = 0; j < img.height; j++) {
+      float y = (j + 0.5f) * cell;
+      for (int k = 0; k < beats; k++) {
+        float a = tau * (bx[k] * 0.5f * cell + by[k] * y + phase[k]);
+        c[k] = (float)cos(a);
+        s[k] = (float)sin(a);
+      }
+      int row = j * img.width;
+      for (int i = 0; i < img.width; i++) {
+        float r = 0, g = 0, b = 0;
+        for (int k = 0; k < beats; k++) {
+          float v = 0.5f - 0.5f * c[k];
+          r += v * br[k];
+          g += v * bg[k];
+          b += v * bb[k];
+          float ck = c[k];
+          c[k] = ck * dc[k] - s[k] * ds[k];
+          s[k] = ck * ds[k] + s[k] * dc[k];
+        }
+        int ir = Math.min(255, (int)(r / beats)), ig = Math.min(255, (int)(g / beats)), ib = Math.min(255, (int)(b / beats));
+        img.pixels[row + i] = 0xff000000 | (ir << 16) | (ig << 8) | ib;
+      }
+    }
+    img.updatePixels();
+  }
+
+  public static String get_info() {
+    return String.format("moire preview %s: %d beats", enabled ? "on" : "off", beats);
+  }
+}
@@ -0,0 +1,257 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import processing.core.PApplet;
+import processing.core.PFont;
+
+//an overlay of how long frames take and where the time goes, to find which
+//grids and gap sizes are too heavy for a machine. It shows percentiles of the
+//time to draw a frame, the slowest ContainedGrids, the segments each type of
+//grid submitted with the time spent tracing and stroking them, the time spent
+//drawing the ui, and how much the animation thread allocates drawing a frame.
+//Batched grids are only stroked when their batch is, so the time of each
+//ContainedGrid is just tracing it unless it isn't batched. The same counters can be logged every frame to csv
+//files in data, starting a new file every PERF_CSV_ROWS rows.
+public class PerfHud implements GridConstants {
+  private static PApplet parent;
+  private static PFont font;
+  public static boolean visible;
+  //when the current frame started, and the times of the last few frames
+  private static long frame_start, last_frame_start;
+  private static float[] frames = new float[PERF_HUD_FRAMES], sorted = new float[PERF_HUD_FRAMES];
+  private static int frame_count;
+  private static float interval;
+  //time spent in each ContainedGrid this frame, by its slot, with its type
+  //and gap, and in each type of grid
+  private static long[] grid_ns = new long[16];
+  private static int[] grid_type = new int[16];
+  private static float[] grid_gap = new float[16];
+  private static int grids;
+  private static long[] type_ns = new long[RADIALGRID + 1];
+  private static long ui_ns;
+  //the grids already listed in the overlay this frame
+  private static int[] shown = new int[PERF_HUD_SLOWEST];
+  //memory allocated by the animation thread between begin and end, if the
+  //jvm can tell, so that the overlay's own garbage isn't counted
+  private static com.sun.management.ThreadMXBean threads;
+  private static long allocated;
+  private static float alloc_bytes;
+  //the csv file being logged to, if any, and how many rows it has
+  private static BufferedWriter csv;
+  private static int csv_rows, csv_files;
+  private static String csv_stamp;
+
+  public static void init(PApplet app) {
+    parent = app;
+    font = parent.createFont("courier", 14, true);
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+      threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+      if (!threads.isThreadAllocatedMemorySupported()) {
+        threads = null;
+      }
+    }
+  }
+
+  //whether the counters are needed, by the overlay or the csv
+  public static boolean is_active() {
+    return visible || csv != null;
+  }
+
+  public static void toggle() {
+    visible = !visible;
+  }
+
+  //start a frame, clearing the counters
+  public static void begin() {
+    if (!is_active()) {
+      return;
+    }
+    last_frame_start = frame_start;
+    frame_start = System.nanoTime();
+    interval = last_frame_start == 0 ? 0 : (frame_start - last_frame_start) / 1e6f;
+    Arrays.fill(grid_ns, 0, grids, 0);
+    Arrays.fill(type_ns, 0);
+    grids = 0;
+    ui_ns = 0;
+    if (threads != null) {
+      allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+  }
+
+  //add the time a ContainedGrid took to draw
+  public static void grid_drawn(int slot, int type, float gap, long ns) {
+    if (slot >= grid_ns.length) {
+      int n = Math.max(slot + 1, grid_ns.length * 2);
+      grid_ns = Arrays.copyOf(grid_ns, n);
+      grid_type = Arrays.copyOf(grid_type, n);
+      grid_gap = Arrays.copyOf(grid_gap, n);
+    }
+    for (; grids <= slot; grids++) {
+      grid_ns[grids] = 0;
+    }
+    grid_ns[slot] += ns;
+    grid_type[slot] = type;
+    grid_gap[slot] = gap;
+    type_ns[type] += ns;
+  }
+
+  public static void ui_drawn(long ns) {
+    ui_ns += ns;
+  }
+
+  //finish a frame, recording its time and logging it if need be
+  public static void end() {
+    if (!is_active()) {
+      return;
+    }
+    float ms = (System.nanoTime() - frame_start) / 1e6f;
+    frames[frame_count++ % frames.length] = ms;
+    if (threads != null) {
+      alloc_bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+    }
+    if (csv != null) {
+      log(ms);
+    }
+  }
+
+  //the pth percentile of the recorded frame times
+  private static float percentile(int n, float p) {
+    return sorted[Math.min(n - 1, (int)(p * n))];
+  }
+
+  //draw the overlay in the top right of the screen
+  public static void draw() {
+    if (!visible) {
+      return;
+    }
+    int n = Math.min(frame_count, frames.length);
+    System.arraycopy(frames, 0, sorted, 0, n);
+    Arrays.sort(sorted, 0, n);
+    StringBuilder msg = new StringBuilder();
+    if (n > 0) {
+      msg.append(String.format("frame ms p50 %.2f  p90 %.2f  p99 %.2f  max %.2f\n",
+        percentile(n, 0.5f), percentile(n, 0.9f), percentile(n, 0.99f), sorted[n - 1]));
+    }
+    msg.append(String.format("interval %.1fms, ui %.2fms\n", interval, ui_ns / 1e6f));
+    if (threads != null) {
+      msg.append(String.format("allocated %.1fKB/frame, %.1fMB/s\n", alloc_bytes / 1024,
+        interval > 0 ? alloc_bytes / 1048576 / (interval / 1000) : 0));
+    }
+    //the slowest few grids
+    msg.append("slowest grids (batched ones just tracing):\n");
+    for (int k = 0; k < PERF_HUD_SLOWEST; k++) {
+      int worst = -1;
+      for (int i = 0; i < grids; i++) {
+        if (grid_ns[i] > 0 && (worst < 0 || grid_ns[i] > grid_ns[worst]) && !shown(i, k)) {
+          worst = i;
+        }
+      }
+      if (worst < 0) {
+        break;
+      }
+      shown[k] = worst;
+      msg.append(String.format("  %d %s gap %.1f: %.2fms\n", worst, GridDrawer.get_name(grid_type[worst]),
+        grid_gap[worst], grid_ns[worst] / 1e6f));
+    }
+    msg.append("segments by type, trace and stroke time:\n");
+    for (int t = 0; t < GridDrawer.num; t++) {
+      int seg = GridDrawer.get_segments(t);
+      if (seg > 0 || type_ns[t] > 0) {
+        msg.append(String.format("  %s: %d (%d vertices), %.2fms + %.2fms\n", GridDrawer.get_name(t), seg, 2 * seg,
+          type_ns[t] / 1e6f, GridDrawer.get_stroke_ns(t) / 1e6f));
+      }
+    }
+    if (csv != null) {
+      msg.append(String.format("logging to perf_%s_%d.csv\n", csv_stamp, csv_files));
+    }
+    String s = msg.toString();
+    int lines = s.split("\n").length;
+    parent.pushStyle();
+    parent.textFont(font);
+    parent.fill(0, 200);
+    parent.noStroke();
+    parent.rect(parent.width - 470, 0, 470, 20 + lines * 17);
+    parent.fill(255);
+    parent.text(s, parent.width - 460, 20);
+    parent.popStyle();
+  }
+
+  private static boolean shown(int i, int k) {
+    for (int j = 0; j < k; j++) {
+      if (shown[j] == i) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //start logging to csv, or stop if already logging
+  public static void toggle_csv() {
+    if (csv != null) {
+      close_csv();
+      parent.println("stopped logging performance");
+      return;
+    }
+    csv_stamp = new SimpleDateFormat("yyyy_MM_dd_HHmmss").format(Calendar.getInstance().getTime());
+    csv_files = 0;
+    open_csv();
+  }
+
+  private static void open_csv() {
+    File f = new File(parent.sketchPath(String.format("data/perf_%s_%d.csv", csv_stamp, csv_files)));
+    f.getParentFile().mkdirs();
+    try {
+      csv = new BufferedWriter(new FileWriter(f));
+      csv.write("frame,ms,interval_ms,ui_ms,alloc_bytes,segments");
+      for (int t = 0; t < GridDrawer.num; t++) {
+        String name = GridDrawer.get_name(t);
+        csv.write("," + name + "_segments," + name + "_trace_ms," + name + "_stroke_ms");
+      }
+      csv.write("\n");
+      csv_rows = 0;
+      parent.println(String.format("logging performance to %s", f));
+    }
+    catch (IOException ex) {
+      parent.println(String.format("could not log performance: %s", ex));
+      csv = null;
+    }
+  }
+
+  private static void close_csv() {
+    try {
+      csv.close();
+    }
+    catch (IOException ex) {
+    }
+    csv = null;
+  }
+
+  //write a row for the frame, moving on to a new file when this one is full
+  private static void log(float ms) {
+    try {
+      StringBuilder row = new StringBuilder();
+      row.append(frame_count).append(',').append(ms).append(',').append(interval).append(',')
+        .append(ui_ns / 1e6f).append(',').append((long)alloc_bytes).append(',').append(GridDrawer.get_segments());
+      for (int t = 0; t < GridDrawer.num; t++) {
+        row.append(',').append(GridDrawer.get_segments(t)).append(',').append(type_ns[t] / 1e6f)
+          .append(',').append(GridDrawer.get_stroke_ns(t) / 1e6f);
+      }
+      row.append('\n');
+      csv.write(row.toString());
+      if (++csv_rows >= PERF_CSV_ROWS) {
+        close_csv();
+        csv_files++;
+        open_csv();
+      }
+    }
+    catch (IOException ex) {
+      parent.println(String.format("stopped logging performance: %s", ex));
+      close_csv();
+    }
+  }
+}
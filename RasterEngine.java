@@ -0,0 +1,271 @@
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.floor;
+import static processing.core.PApplet.min;
+import static processing.core.PApplet.max;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import processing.core.PGraphics;
+
+//a render engine which works out each pixel of a grid directly, instead of
+//drawing lines. Grids like SquareGrid are just families of evenly spaced
+//parallel lines, so the distance from a pixel to the nearest line of a
+//family is how far its projected coordinate is from a multiple of the gap.
+//That gives how much of the pixel the line covers, so the cost only depends
+//on the number of pixels and not on the number of lines. Polar grids work the
+//same way with the radius and angle of each pixel. Bands of rows of the
+//screen are split between the threads of a fork-join pool.
+public class RasterEngine implements GridConstants {
+  private static ForkJoinPool pool;
+  //tables of the radius and angle of every pixel around a point, keyed by the
+  //point and the size of the graphics. These don't depend on the rotation,
+  //gap or colour of a grid, so only moving it means working them out again
+  private static LinkedHashMap<String, PolarTable> tables;
+
+  public static void init() {
+    pool = ForkJoinPool.commonPool();
+    //an access ordered map evicting its eldest entry makes a simple LRU
+    tables = new LinkedHashMap<String, PolarTable>(8, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, PolarTable> eldest) {
+        return size() > RASTER_POLAR_TABLES;
+      }
+    };
+  }
+
+  //draw families of lines into some graphics. each family is the set of lines
+  //y = k * gap in a frame rotated by th plus its angle, centred at (x, y)
+  public static void draw_lines(PGraphics g, float x, float y, float th, float gap, float stroke, int c, float[] angles) {
+    int n = angles.length;
+    float[] nx = new float[n], ny = new float[n];
+    for (int i = 0; i < n; i++) {
+      nx[i] = (float)-sin(th + angles[i]);
+      ny[i] = (float)cos(th + angles[i]);
+    }
+    g.loadPixels();
+    pool.invoke(new LineRows(g.pixels, g.width, 0, g.height, x, y, gap, stroke, c, nx, ny));
+    g.updatePixels();
+  }
+
+  //draw a polar grid into some graphics. type is the type of the grid, one of
+  //CONCENTRICGRID, RADIALGRID or TRIANGLERADIAL. TriangleRadial wedges also
+  //depend on the width of the screen
+  public static void draw_polar(PGraphics g, int type, float x, float y, float th, float gap, float stroke, int c, int screen_width) {
+    PolarTable table = get_table(x, y, g.width, g.height);
+    //half the angle a TriangleRadial wedge spans, from its triangles' half
+    //width of 2 * stroke_up at a height of r
+    float wedge = (float)Math.atan(2 * stroke / sqrt(stroke * stroke + (screen_width / 2f) * (screen_width / 2f)));
+    g.loadPixels();
+    pool.invoke(new PolarRows(g.pixels, table, 0, g.height, type, th, gap, stroke, wedge, c));
+    g.updatePixels();
+  }
+
+  //get the table for a point, working it out if need be. Grids may be drawn
+  //from several threads at once, so only one can use the tables at a time
+  private static synchronized PolarTable get_table(float x, float y, int w, int h) {
+    String key = x + " " + y + " " + w + " " + h;
+    PolarTable table = tables.get(key);
+    if (table == null) {
+      table = new PolarTable(w, h);
+      pool.invoke(new TableRows(table, 0, h, x, y));
+      tables.put(key, table);
+    }
+    return table;
+  }
+
+  //how much of a pixel a line covers, given the distance from the centre of
+  //the pixel to the line. This is the overlap of the pixel and the line across
+  //the line, which antialiases it
+  static float coverage(float d, float stroke) {
+    return max(0, min(d + 0.5f, stroke / 2) - max(d - 0.5f, -stroke / 2));
+  }
+
+  //the distance from a coordinate to the nearest multiple of gap
+  static float distance(float t, float gap) {
+    float f = t / gap;
+    f -= (float)floor(f);
+    return min(f, 1 - f) * gap;
+  }
+
+  //put a colour over a pixel with an alpha of a, allowing for the pixel itself
+  //being translucent, as in an offscreen layer
+  static int over(int dst, int c, float a) {
+    float da = (dst >>> 24) / 255f;
+    float oa = a + da * (1 - a);
+    if (oa <= 0) {
+      return 0;
+    }
+    float k = da * (1 - a);
+    int r = (int)((((c >> 16) & 0xff) * a + ((dst >> 16) & 0xff) * k) / oa + 0.5f);
+    int gr = (int)((((c >> 8) & 0xff) * a + ((dst >> 8) & 0xff) * k) / oa + 0.5f);
+    int b = (int)(((c & 0xff) * a + (dst & 0xff) * k) / oa + 0.5f);
+    return ((int)(oa * 255 + 0.5f) << 24) | (r << 16) | (gr << 8) | b;
+  }
+
+  //the radius and angle of every pixel of some graphics around a point
+  private static class PolarTable {
+    int w;
+    float[] radius, angle;
+
+    PolarTable(int w, int h) {
+      this.w = w;
+      radius = new float[w * h];
+      angle = new float[w * h];
+    }
+  }
+
+  //a band of rows of the screen, which splits itself in two until it is small
+  //enough to work on
+  private static abstract class Band extends RecursiveAction {
+    protected int y0, y1;
+
+    Band(int y0, int y1) {
+      this.y0 = y0;
+      this.y1 = y1;
+    }
+
+    //make a band just like this one over other rows
+    abstract Band split(int y0, int y1);
+    //work on the rows of the band
+    abstract void rows();
+
+    protected void compute() {
+      if (y1 - y0 > RASTER_ROWS_PER_TASK) {
+        int mid = (y0 + y1) / 2;
+        invokeAll(split(y0, mid), split(mid, y1));
+      } else {
+        rows();
+      }
+    }
+  }
+
+  private static class LineRows extends Band {
+    private int[] pixels;
+    private int w, c;
+    private float x, y, gap, stroke;
+    private float[] nx, ny;
+
+    LineRows(int[] pixels, int w, int y0, int y1, float x, float y, float gap, float stroke, int c, float[] nx, float[] ny) {
+      super(y0, y1);
+      this.pixels = pixels;
+      this.w = w;
+      this.x = x;
+      this.y = y;
+      this.gap = gap;
+      this.stroke = stroke;
+      this.c = c;
+      this.nx = nx;
+      this.ny = ny;
+    }
+
+    Band split(int y0, int y1) {
+      return new LineRows(pixels, w, y0, y1, x, y, gap, stroke, c, nx, ny);
+    }
+
+    void rows() {
+      int n = nx.length;
+      float alpha = (c >>> 24) / 255f;
+      //projected coordinate of the start of the row in each family, which
+      //moves by nx for every pixel along the row
+      float[] t = new float[n];
+      for (int py = y0; py < y1; py++) {
+        for (int i = 0; i < n; i++) {
+          t[i] = (0.5f - x) * nx[i] + (py + 0.5f - y) * ny[i];
+        }
+        int row = py * w;
+        for (int px = 0; px < w; px++) {
+          float cov = 0;
+          for (int i = 0; i < n; i++) {
+            cov = max(cov, coverage(distance(t[i] + px * nx[i], gap), stroke));
+          }
+          if (cov > 0) {
+            pixels[row + px] = over(pixels[row + px], c, cov * alpha);
+          }
+        }
+      }
+    }
+  }
+
+  //fills in a band of a PolarTable
+  private static class TableRows extends Band {
+    private PolarTable table;
+    private float x, y;
+
+    TableRows(PolarTable table, int y0, int y1, float x, float y) {
+      super(y0, y1);
+      this.table = table;
+      this.x = x;
+      this.y = y;
+    }
+
+    Band split(int y0, int y1) {
+      return new TableRows(table, y0, y1, x, y);
+    }
+
+    void rows() {
+      int w = table.w;
+      for (int py = y0; py < y1; py++) {
+        float dy = py + 0.5f - y;
+        for (int px = 0; px < w; px++) {
+          float dx = px + 0.5f - x;
+          table.radius[py * w + px] = (float)sqrt(dx * dx + dy * dy);
+          table.angle[py * w + px] = (float)atan2(dy, dx);
+        }
+      }
+    }
+  }
+
+  private static class PolarRows extends Band {
+    private int[] pixels;
+    private PolarTable table;
+    private int type, c;
+    private float th, gap, stroke, wedge;
+
+    PolarRows(int[] pixels, PolarTable table, int y0, int y1, int type, float th, float gap, float stroke, float wedge, int c) {
+      super(y0, y1);
+      this.pixels = pixels;
+      this.table = table;
+      this.type = type;
+      this.th = th;
+      this.gap = gap;
+      this.stroke = stroke;
+      this.wedge = wedge;
+      this.c = c;
+    }
+
+    Band split(int y0, int y1) {
+      return new PolarRows(pixels, table, y0, y1, type, th, gap, stroke, wedge, c);
+    }
+
+    void rows() {
+      float alpha = (c >>> 24) / 255f;
+      //spokes are every angle_gap, starting straight down from the centre in
+      //the frame of the grid, as GridDrawer draws them
+      float angle_gap = PI / (int)gap;
+      float start = th + HALF_PI;
+      int w = table.w;
+      for (int i = y0 * w; i < y1 * w; i++) {
+        float r = table.radius[i];
+        float cov;
+        if (type == CONCENTRICGRID) {
+          //there is no circle at a radius of 0
+          cov = coverage(r < gap / 2 ? gap - r : distance(r, gap), stroke);
+        } else {
+          float a = distance(table.angle[i] - start, angle_gap);
+          if (type == RADIALGRID) {
+            cov = coverage(r * (float)sin(a), stroke);
+          } else {
+            cov = min(1, max(0, 0.5f + r * (float)sin(wedge - a)));
+          }
+        }
+        if (cov > 0) {
+          pixels[i] = over(pixels[i], c, cov * alpha);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import processing.core.PApplet;
+import processing.event.Event;
+
+//keeps track of whether anything has changed in normal mode, so that a frame
+//is only drawn when there is something new to show. Moving ui elements,
+//pressing keys, and adding or removing grids all mark the screen as dirty.
+//When a frame comes round and nothing is dirty the sketch stops looping, and
+//the last frame stays on screen, until something is marked again. Auto mode
+//changes every frame, so it always draws.
+public class Redraw implements GridConstants {
+  private static PApplet parent;
+  public static boolean enabled;
+  private static boolean dirty;
+  //events which came in while the sketch had stopped looping
+  private static ArrayList<Event> deferred = new ArrayList<Event>();
+
+  public static void init(PApplet app) {
+    parent = app;
+    enabled = REDRAW_ON_CHANGE_ENABLED;
+    mark();
+  }
+
+  //put off an event if the sketch has stopped looping, giving whether it was.
+  //While it isn't looping processing handles events straight away on the
+  //event thread, so a handler could still be changing the grids when the
+  //frame it asked for starts drawing. Instead the sketch starts looping again
+  //and the event is handled at the start of the next frame, by take_deferred.
+  //Once it is looping processing queues events up for the animation thread
+  //itself
+  public static synchronized boolean defer(Event e) {
+    if (parent == null || parent.isLooping()) {
+      return false;
+    }
+    deferred.add(e);
+    parent.loop();
+    return true;
+  }
+
+  //the events put off since the last frame, in the order they came in.
+  //called from the animation thread
+  public static synchronized Event[] take_deferred() {
+    Event[] events = deferred.toArray(new Event[deferred.size()]);
+    deferred.clear();
+    return events;
+  }
+
+  //mark that something has changed, starting the sketch looping again if it
+  //had stopped. Anything changing the grids in response to an event should
+  //only mark once it is done
+  public static void mark() {
+    dirty = true;
+    if (parent != null) {
+      parent.loop();
+    }
+  }
+
+  //whether this frame should be drawn, called at the start of every frame.
+  //If not the sketch stops looping
+  public static boolean should_draw(boolean is_auto) {
+    if (!enabled || is_auto || FrameRecorder.is_recording()) {
+      return true;
+    }
+    if (dirty) {
+      dirty = false;
+      return true;
+    }
+    parent.noLoop();
+    return false;
+  }
+
+  public static void toggle() {
+    enabled = !enabled;
+    mark();
+  }
+}
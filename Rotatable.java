@@ -1,10 +1,15 @@
 import static java.lang.Math.abs;
-
-import processing.core.PVector;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static processing.core.PApplet.dist;
+import static processing.core.PApplet.mag;
 
 //ClickUIElement which can rotate
 public class Rotatable extends ClickUIElement implements GridConstants {
-  private PVector loc, head; //position, and orientation tracked by vectors
+  //position, and orientation tracked by a vector to the handle, as plain
+  //floats so that nothing is made when they change
+  private float loc_x, loc_y, head_x, head_y;
   private float th; //rotation offset
   private static float r = ROTATABLE_RADIUS;
   private static float l = ROTATABLE_LENGTH;
@@ -40,8 +45,10 @@ public class Rotatable extends ClickUIElement implements GridConstants {
   }
 
   private void set_rotation(float th) {
-    float m = head.mag();
-    head = PVector.fromAngle(th + this.th).mult(m);
+    float m = mag(head_x, head_y);
+    head_x = (float)cos(th + this.th) * m;
+    head_y = (float)sin(th + this.th) * m;
+    place_handle();
   }
 
   public static float get_delta() {
@@ -61,34 +68,41 @@ public class Rotatable extends ClickUIElement implements GridConstants {
 
   //return a copy with the copy constructor
   public Rotatable copy() {
-    return new Rotatable(loc, head, th, c);
+    return new Rotatable(this);
   }
 
   //private copy constructor
-  private Rotatable(PVector loc, PVector head, float th, int c) {
-    super(c);
-    this.loc = loc.copy();
-    this.head = head.copy();
-    this.th = th;
+  private Rotatable(Rotatable e) {
+    super(e.c);
+    loc_x = e.loc_x;
+    loc_y = e.loc_y;
+    head_x = e.head_x;
+    head_y = e.head_y;
+    th = e.th;
+    place_handle();
   }
 
   //get rotation value
   public float get_rotation() {
-    return (head.heading() + TWO_PI - th) % TWO_PI;
+    return ((float)atan2(head_y, head_x) + TWO_PI - th) % TWO_PI;
   }
 
   //set position
   public void set_pos(float x, float y) {
-    loc.x = x;
-    loc.y = y;
+    loc_x = x;
+    loc_y = y;
+    place_handle();
   }
 
   //public constructor
   public Rotatable(float x, float y, float th, int c) {
     super(c);
-    loc = new PVector(x, y);
-    head = PVector.fromAngle(th).mult(l);
+    loc_x = x;
+    loc_y = y;
+    head_x = (float)cos(th) * l;
+    head_y = (float)sin(th) * l;
     this.th = th % TWO_PI;
+    place_handle();
   }
 
   //constructor with defaults
@@ -98,18 +112,32 @@ public class Rotatable extends ClickUIElement implements GridConstants {
 
   //check if hovers with some vector calculation
   boolean hovers(float x, float y) {
-    return new PVector(x, y).sub(PVector.add(loc, head)).mag() < r;
+    return dist(x, y, loc_x + head_x, loc_y + head_y) < r;
   }
 
   //drag method. basically, points towards the new location and resets the
   //length
   void drag(float x, float y) {
-    head = new PVector(x, y).sub(loc).normalize().mult(l);
+    float d = dist(x, y, loc_x, loc_y);
+    //PVector.normalize leaves a vector of no length alone
+    if (d != 0) {
+      head_x = (x - loc_x) / d * l;
+      head_y = (y - loc_y) / d * l;
+    } else {
+      head_x = 0;
+      head_y = 0;
+    }
+    place_handle();
+  }
+
+  //move where the element can be clicked to the end of the line
+  private void place_handle() {
+    place(loc_x + head_x, loc_y + head_y, r);
   }
 
   //draw element
   void draw_element() {
-    parent.ellipse(loc.x + head.x, loc.y + head.y, r*2, r*2);
-    parent.line(loc.x, loc.y, loc.x + head.x, loc.y + head.y);
+    parent.ellipse(loc_x + head_x, loc_y + head_y, r*2, r*2);
+    parent.line(loc_x, loc_y, loc_x + head_x, loc_y + head_y);
   }
 }
@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+//a whole screen of grids, as plain values, such as a scene that has been
+//serialised to a file. Unlike ContainedGrids a scene has no ui and doesn't
+//depend on the PApplet, so it can be drawn by any set of grids on any thread.
+//The parameters of the grids are kept in parallel arrays rather than an
+//object for each grid, so that tens of thousands of grids take little memory
+//and drawing or saving them just runs along the arrays.
+public class Scene implements GridConstants {
+  public int width, height;
+  //the parameters of each grid, in the order they are drawn. only the first
+  //size() of each are used. they can be read and written directly, but not
+  //grown
+  public int[] type, c;
+  public float[] x, y, th, gap, stroke;
+  private int size = 0;
+
+  public Scene(int width, int height) {
+    this.width = width;
+    this.height = height;
+    allocate(16);
+  }
+
+  //the number of grids in the scene
+  public int size() {
+    return size;
+  }
+
+  private void allocate(int n) {
+    type = type == null ? new int[n] : Arrays.copyOf(type, n);
+    c = c == null ? new int[n] : Arrays.copyOf(c, n);
+    x = x == null ? new float[n] : Arrays.copyOf(x, n);
+    y = y == null ? new float[n] : Arrays.copyOf(y, n);
+    th = th == null ? new float[n] : Arrays.copyOf(th, n);
+    gap = gap == null ? new float[n] : Arrays.copyOf(gap, n);
+    stroke = stroke == null ? new float[n] : Arrays.copyOf(stroke, n);
+  }
+
+  //add a grid to the end, returning its index
+  public int add(int type, float x, float y, float th, float gap, float stroke, int c) {
+    if (size == this.type.length) {
+      allocate(size * 2);
+    }
+    set(size, type, x, y, th, gap, stroke, c);
+    return size++;
+  }
+
+  //set all of the parameters of a grid
+  public void set(int i, int type, float x, float y, float th, float gap, float stroke, int c) {
+    this.type[i] = type;
+    this.x[i] = x;
+    this.y[i] = y;
+    this.th[i] = th;
+    this.gap[i] = gap;
+    this.stroke[i] = stroke;
+    this.c[i] = c;
+  }
+
+  //remove a grid, moving the ones after it down
+  public void remove(int i) {
+    int n = size - i - 1;
+    System.arraycopy(type, i + 1, type, i, n);
+    System.arraycopy(c, i + 1, c, i, n);
+    System.arraycopy(x, i + 1, x, i, n);
+    System.arraycopy(y, i + 1, y, i, n);
+    System.arraycopy(th, i + 1, th, i, n);
+    System.arraycopy(gap, i + 1, gap, i, n);
+    System.arraycopy(stroke, i + 1, stroke, i, n);
+    size--;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  //a copy of the scene, which doesn't change with it
+  public Scene copy() {
+    Scene s = new Scene(width, height);
+    s.allocate(Math.max(16, size));
+    System.arraycopy(type, 0, s.type, 0, size);
+    System.arraycopy(c, 0, s.c, 0, size);
+    System.arraycopy(x, 0, s.x, 0, size);
+    System.arraycopy(y, 0, s.y, 0, size);
+    System.arraycopy(th, 0, s.th, 0, size);
+    System.arraycopy(gap, 0, s.gap, 0, size);
+    System.arraycopy(stroke, 0, s.stroke, 0, size);
+    s.size = size;
+    return s;
+  }
+
+  //whether the first n grids are the same as those of another scene
+  public boolean same_start(Scene other, int n) {
+    if (size < n || other.size < n) {
+      return false;
+    }
+    for (int i = 0; i < n; i++) {
+      if (type[i] != other.type[i] || c[i] != other.c[i] || x[i] != other.x[i] || y[i] != other.y[i]
+        || th[i] != other.th[i] || gap[i] != other.gap[i] || stroke[i] != other.stroke[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //draw every grid in order, using a set of grids from GridDrawer.make_set
+  public void draw(GridDrawer[] set) {
+    draw(set, 0, size);
+  }
+
+  //draw the grids from index from up to to
+  public void draw(GridDrawer[] set, int from, int to) {
+    GridDrawer.begin_batch(set);
+    for (int i = from; i < to; i++) {
+      set[type[i]].draw(x[i], y[i], th[i], gap[i], stroke[i], c[i]);
+    }
+    GridDrawer.end_batch(set);
+  }
+
+  //read a scene from the lines of a file written by serialise_to_file. Each
+  //line is a key and a value, and each grid starts with its type. The radius
+  //is worked out again when drawing so it is ignored. Numbers were written
+  //with %f, which uses a comma in some locales, so both are accepted
+  public static Scene parse(String[] lines) {
+    Scene scene = new Scene(0, 0);
+    int k = -1;
+    float r = 0, g = 0, b = 0, a = 255;
+    for (String line : lines) {
+      for (String l : line.split("\n")) {
+        String[] kv = l.trim().split("\\s+");
+        if (kv.length != 2) {
+          continue;
+        }
+        String key = kv[0];
+        String val = kv[1].replace(',', '.');
+        if (key.equals("type")) {
+          if (k >= 0) {
+            scene.c[k] = colour(r, g, b, a);
+          }
+          int type = GridDrawer.get_type(val);
+          if (type < 0) {
+            throw new IllegalArgumentException("unknown grid type " + val);
+          }
+          k = scene.add(type, 0, 0, 0, GAP_SIZE_MIN, STROKE_WIDTH_MIN, 0);
+          r = g = b = 0;
+          a = 255;
+        } else if (key.equals("screen_width")) {
+          scene.width = Integer.parseInt(val);
+        } else if (key.equals("screen_height")) {
+          scene.height = Integer.parseInt(val);
+        } else if (k >= 0) {
+          float v = Float.parseFloat(val);
+          if (key.equals("r")) {
+            r = v;
+          } else if (key.equals("g")) {
+            g = v;
+          } else if (key.equals("b")) {
+            b = v;
+          } else if (key.equals("alpha")) {
+            a = v;
+          } else if (key.equals("x")) {
+            scene.x[k] = v;
+          } else if (key.equals("y")) {
+            scene.y[k] = v;
+          } else if (key.equals("rotation")) {
+            scene.th[k] = v;
+          } else if (key.equals("gap_size")) {
+            scene.gap[k] = v;
+          } else if (key.equals("stroke_width")) {
+            scene.stroke[k] = v;
+          }
+        }
+      }
+    }
+    if (k >= 0) {
+      scene.c[k] = colour(r, g, b, a);
+    }
+    if (scene.width <= 0 || scene.height <= 0) {
+      throw new IllegalArgumentException("no screen size");
+    }
+    return scene;
+  }
+
+  //write the scene in the same text format as serialise_to_file. The text
+  //format has no alpha, so that convert.py can still read it
+  public String[] to_strings() {
+    String[] ser = new String[size + 1];
+    ser[0] = String.format("screen_width %d\nscreen_height %d\n", width, height);
+    for (int i = 0; i < size; i++) {
+      ser[i + 1] = String.format(
+        "type %s\nr %f\ng %f\nb %f\nx %f\ny %f\nrotation %f\ngap_size %f\nstroke_width %f\nradius %f\n", 
+        GridDrawer.get_name(type[i]), (float)((c[i] >> 16) & 0xff), (float)((c[i] >> 8) & 0xff), (float)(c[i] & 0xff), 
+        x[i], y[i], th[i], gap[i], stroke[i], radius(x[i], y[i]));
+    }
+    return ser;
+  }
+
+  //the radius needed to fill the screen from a point
+  float radius(float x, float y) {
+    return Math.max(Math.max((float)Math.hypot(x, y), (float)Math.hypot(x - width, y)), 
+      Math.max((float)Math.hypot(x, y - height), (float)Math.hypot(x - width, y - height)));
+  }
+
+  //pack a colour the way processing does
+  static int colour(float r, float g, float b, float a) {
+    return (channel(a) << 24) | (channel(r) << 16) | (channel(g) << 8) | channel(b);
+  }
+
+  private static int channel(float v) {
+    return Math.max(0, Math.min(255, Math.round(v)));
+  }
+}
@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import processing.core.PApplet;
+
+//a library of scenes in one binary file, which scenes are only ever added to.
+//The file starts with a magic number and a version, then each scene is a
+//header of its screen size and number of grids, followed by a packed record
+//for each grid:
+//  byte type, byte red, green, blue, alpha,
+//  float x, y, rotation, gap size, stroke width
+//all big endian. Every record is the same size, so opening a library only
+//has to hop from header to header to index it, and a scene can then be read
+//straight out of the mapped file by its number without parsing any text. A
+//scene cut off by a crash while it was being added is skipped when reading,
+//and cut off before the next scene is added.
+//
+//It can also be run to convert between libraries and the text format:
+//  java -cp core.jar:. SceneLibrary pack library.bin scenes.txt...
+//  java -cp core.jar:. SceneLibrary unpack library.bin directory
+public class SceneLibrary implements GridConstants {
+  private static final int MAGIC = 0x4d4f4952; //"MOIR"
+  private static final short VERSION = 1;
+  private static final int FILE_HEADER = 8;
+  private static final int SCENE_HEADER = 12;
+  private static final int RECORD = 25;
+
+  private MappedByteBuffer buf;
+  //where each scene starts in the file
+  private int[] offsets;
+  private int count;
+
+  //open a library to read. a library being appended to has to be opened
+  //again to see the new scenes. The whole file is mapped at once, so a
+  //library can be at most 2GB
+  public SceneLibrary(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } 
+    finally {
+      channel.close();
+    }
+    if (buf.limit() < FILE_HEADER || buf.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not a scene library");
+    }
+    if (buf.getShort(4) != VERSION) {
+      throw new IOException(String.format("%s is version %d, expecting %d", file, buf.getShort(4), VERSION));
+    }
+    offsets = new int[16];
+    int pos = FILE_HEADER;
+    while (pos + SCENE_HEADER <= buf.limit()) {
+      int n = buf.getInt(pos + 8);
+      int end = pos + SCENE_HEADER + n * RECORD;
+      //a scene cut off by a crash while it was being added is left out
+      if (n < 0 || end > buf.limit()) {
+        break;
+      }
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      offsets[count++] = pos;
+      pos = end;
+    }
+  }
+
+  //the number of scenes in the library
+  public int size() {
+    return count;
+  }
+
+  //read the ith scene
+  public Scene get(int i) {
+    if (i < 0 || i >= count) {
+      throw new IndexOutOfBoundsException(String.format("scene %d of %d", i, count));
+    }
+    int pos = offsets[i];
+    Scene scene = new Scene(buf.getInt(pos), buf.getInt(pos + 4));
+    int n = buf.getInt(pos + 8);
+    pos += SCENE_HEADER;
+    for (int j = 0; j < n; j++, pos += RECORD) {
+      int c = ((buf.get(pos + 4) & 0xff) << 24) | ((buf.get(pos + 1) & 0xff) << 16)
+        | ((buf.get(pos + 2) & 0xff) << 8) | (buf.get(pos + 3) & 0xff);
+      scene.add(buf.get(pos) & 0xff, buf.getFloat(pos + 5), buf.getFloat(pos + 9), buf.getFloat(pos + 13), 
+        buf.getFloat(pos + 17), buf.getFloat(pos + 21), c);
+    }
+    return scene;
+  }
+
+  //find where the last whole scene of a library ends, by hopping from header
+  //to header as opening it does. Anything after that was cut off by a crash
+  //while a scene was being added. If the file header itself is cut off, or
+  //isn't a library, the library is taken to be empty
+  private static long end_of_scenes(FileChannel channel) throws IOException {
+    long size = channel.size();
+    ByteBuffer header = ByteBuffer.allocate(SCENE_HEADER);
+    if (size < FILE_HEADER || read(channel, header, 0, FILE_HEADER).getInt(0) != MAGIC) {
+      return 0;
+    }
+    long pos = FILE_HEADER;
+    while (pos + SCENE_HEADER <= size) {
+      int n = read(channel, header, pos, SCENE_HEADER).getInt(8);
+      long end = pos + SCENE_HEADER + (long)n * RECORD;
+      if (n < 0 || end > size) {
+        break;
+      }
+      pos = end;
+    }
+    return pos;
+  }
+
+  //read some bytes from a place in a channel into the start of a buffer
+  private static ByteBuffer read(FileChannel channel, ByteBuffer buf, long pos, int length) throws IOException {
+    buf.clear().limit(length);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, pos + buf.position()) < 0) {
+        throw new IOException("library ended early");
+      }
+    }
+    return buf;
+  }
+
+  //add a scene to the end of a library, making the library if need be. A
+  //scene left half written by a crash is cut off first, so the new scene
+  //goes straight after the last whole one and the headers still line up
+  public static synchronized void append(File file, Scene scene) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long pos = end_of_scenes(channel);
+      channel.truncate(pos);
+      boolean fresh = pos == 0;
+      ByteBuffer out = ByteBuffer.allocate((fresh ? FILE_HEADER : 0) + SCENE_HEADER + scene.size() * RECORD);
+      if (fresh) {
+        out.putInt(MAGIC).putShort(VERSION).putShort((short)0);
+      }
+      out.putInt(scene.width).putInt(scene.height).putInt(scene.size());
+      for (int i = 0; i < scene.size(); i++) {
+        int c = scene.c[i];
+        out.put((byte)scene.type[i])
+          .put((byte)(c >> 16)).put((byte)(c >> 8)).put((byte)c).put((byte)(c >>> 24))
+          .putFloat(scene.x[i]).putFloat(scene.y[i]).putFloat(scene.th[i]).putFloat(scene.gap[i]).putFloat(scene.stroke[i]);
+      }
+      out.flip();
+      while (out.hasRemaining()) {
+        pos += channel.write(out, pos);
+      }
+    } 
+    finally {
+      channel.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+      System.err.println("usage: SceneLibrary pack library.bin scenes.txt...\n"
+        + "       SceneLibrary unpack library.bin directory");
+      System.exit(1);
+    }
+    //the grids are only needed for their names
+    GridDrawer.init(new PApplet());
+    File lib = new File(args[1]);
+    long start = System.nanoTime();
+    int n = 0;
+    if (args[0].equals("pack")) {
+      for (int i = 2; i < args.length; i++) {
+        append(lib, Scene.parse(PApplet.loadStrings(new File(args[i]))));
+        n++;
+      }
+    } else {
+      SceneLibrary library = new SceneLibrary(lib);
+      File dir = new File(args[2]);
+      dir.mkdirs();
+      String name = lib.getName().replaceAll("\\.[^.]*$", "");
+      for (; n < library.size(); n++) {
+        PApplet.saveStrings(new File(dir, String.format("%s_%05d.txt", name, n)), library.get(n).to_strings());
+      }
+    }
+    System.out.println(String.format("%sed %d scenes in %.1fms", args[0], n, (System.nanoTime() - start) / 1e6));
+  }
+}
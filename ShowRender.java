@@ -0,0 +1,186 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+//a command line program to render an auto mode show (saved with j) to an
+//image sequence, much faster than recording the sketch. Any frame of a show
+//can be worked out straight away, so frames are drawn on every core at once,
+//each thread with its own graphics, set of grids and copy of the show. The
+//frames are then written in order by the main thread. It can be run from the
+//built sketch as
+//  java -cp core.jar:. ShowRender [-w width] [-t threads] [-r fps] [-s start] [-n frames] [-o dir] show.txt
+//where -w sets the width of the frames (the height keeps the show's aspect
+//ratio), -t the number of threads, -r the frames per second of the output,
+//-s the second to start at and -n how many frames to render. Frames are
+//written as numbered pngs into the -o directory, or with -o - as raw rgb to
+//stdout in order, ready to be piped into an encoder such as
+//  ffmpeg -f rawvideo -pix_fmt rgb24 -s 3840x2146 -r 60 -i - show.mp4
+//Layers are blended in AUTO_COMPOSITOR_MODE, as auto mode starts off with
+public class ShowRender implements GridConstants {
+  private static PApplet app;
+  private static String[] show;
+  private static int width, height;
+  private static float scale;
+  private static boolean raw;
+
+  //what each thread draws with, made the first time it draws a frame
+  private static class Worker {
+    PGraphics pg;
+    GridDrawer[] set;
+    AutoGrid ag;
+  }
+  private static final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+    protected Worker initialValue() {
+      Worker w = new Worker();
+      w.pg = app.createGraphics(width, height, JAVA2D);
+      w.ag = AutoGrid.from_show(show);
+      w.set = GridDrawer.make_screen_set(w.pg, w.ag.get_width(), w.ag.get_height());
+      return w;
+    }
+  };
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    int threads = Runtime.getRuntime().availableProcessors();
+    float fps = AUTO_FRAMES_PER_SECOND, start = 0;
+    int frames = (int)AUTO_FRAMES_PER_SECOND * 10;
+    String out = "frames";
+    File file = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-w") && i + 1 < args.length) {
+        width = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-t") && i + 1 < args.length) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-r") && i + 1 < args.length) {
+        fps = Float.parseFloat(args[++i]);
+      } else if (args[i].equals("-s") && i + 1 < args.length) {
+        start = Float.parseFloat(args[++i]);
+      } else if (args[i].equals("-n") && i + 1 < args.length) {
+        frames = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-o") && i + 1 < args.length) {
+        out = args[++i];
+      } else {
+        file = new File(args[i]);
+      }
+    }
+    if (file == null) {
+      System.err.println("usage: ShowRender [-w width] [-t threads] [-r fps] [-s start] [-n frames] [-o dir] show.txt");
+      System.exit(1);
+    }
+
+    //the grids need a PApplet, but it is never run. It still needs graphics
+    //of its own, for grids that are drawn through it rather than a set
+    app = new PApplet();
+    app.g = app.createGraphics(app.width, app.height, JAVA2D);
+    GridDrawer.init(app);
+    AutoGrid.init(app);
+    show = PApplet.loadStrings(file);
+    AutoGrid ag = AutoGrid.from_show(show);
+    if (ag == null) {
+      System.err.println(String.format("%s is not a show", file));
+      System.exit(1);
+    }
+    width = width > 0 ? width : ag.get_width();
+    scale = width / (float)ag.get_width();
+    height = Math.round(ag.get_height() * scale);
+
+    raw = out.equals("-");
+    File dir = new File(out);
+    if (!raw) {
+      dir.mkdirs();
+    }
+    OutputStream stdout = raw ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 20) : null;
+
+    //frames are handed out in order, and at most a couple per thread are in
+    //flight, so memory stays bounded however long the show is. The oldest is
+    //always written first
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    double first = start * AUTO_FRAMES_PER_SECOND, step = AUTO_FRAMES_PER_SECOND / fps;
+    long began = System.nanoTime();
+    int submitted = 0;
+    try {
+      for (int written = 0; written < frames; written++) {
+        while (submitted < frames && pending.size() < threads * 2) {
+          final double frame = first + submitted * step;
+          pending.add(pool.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+              return render(frame);
+            }
+          }));
+          submitted++;
+        }
+        write(pending.poll().get(), stdout, dir, written);
+        if ((written + 1) % 60 == 0 || written + 1 == frames) {
+          float secs = (System.nanoTime() - began) / 1e9f;
+          System.err.println(String.format("%d/%d frames, %.1f frames per second on %d threads", written + 1, frames, (written + 1) / secs, threads));
+        }
+      }
+      if (raw) {
+        stdout.flush();
+      }
+    }
+    catch (Exception ex) {
+      System.err.println(String.format("failed to render: %s", ex.getCause() != null ? ex.getCause() : ex));
+      System.exit(1);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  //write a frame, to stdout or as a numbered png
+  private static void write(byte[] data, OutputStream stdout, File dir, int n) throws IOException {
+    if (raw) {
+      stdout.write(data);
+      return;
+    }
+    FileOutputStream f = new FileOutputStream(new File(dir, String.format("frame_%06d.png", n)));
+    try {
+      f.write(data);
+    }
+    finally {
+      f.close();
+    }
+  }
+
+  //draw a frame of the show on this thread, giving it as png or raw rgb bytes
+  private static byte[] render(double frame) throws IOException {
+    Worker w = workers.get();
+    w.ag.seek(frame);
+    w.pg.beginDraw();
+    w.pg.background(0);
+    w.pg.scale(scale);
+    w.ag.draw(w.set);
+    w.pg.endDraw();
+    w.pg.loadPixels();
+    int[] px = w.pg.pixels;
+    if (raw) {
+      byte[] rgb = new byte[width * height * 3];
+      for (int i = 0, j = 0; i < width * height; i++) {
+        rgb[j++] = (byte)(px[i] >> 16);
+        rgb[j++] = (byte)(px[i] >> 8);
+        rgb[j++] = (byte)px[i];
+      }
+      return rgb;
+    }
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    img.setRGB(0, 0, width, height, px, 0, width);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(img, "png", png);
+    return png.toByteArray();
+  }
+}
@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+//A bank of values which each vary between a minimum and maximum using a
+//sinewave. Graphically, this always produces nice pleasant smooth motion, and
+//it's a trick I've been using for a while. Auto mode animates a handful of
+//parameters for every layer, so rather than each being an object of its own
+//the waves are kept side by side in arrays and all worked out at once in a
+//single loop. Each wave is a closed form function of time, so the bank can be
+//set to any time straight away without going through the frames before it
+public class SineBank {
+  //the phase at time 0, speed, middle and amplitude of each wave, and its value
+  private float[] phase, speed, mid, amp, value;
+  private int size;
+  //the time every value is worked out at, in frames
+  private double t;
+
+  public SineBank() {
+    phase = new float[16];
+    speed = new float[16];
+    mid = new float[16];
+    amp = new float[16];
+    value = new float[16];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  //add a wave, giving its index. speed is in radians per frame
+  public int add(float min, float max, float speed, float phase) {
+    if (size == this.phase.length) {
+      int n = size * 2;
+      this.phase = Arrays.copyOf(this.phase, n);
+      this.speed = Arrays.copyOf(this.speed, n);
+      mid = Arrays.copyOf(mid, n);
+      amp = Arrays.copyOf(amp, n);
+      value = Arrays.copyOf(value, n);
+    }
+    int i = size++;
+    this.phase[i] = phase;
+    this.speed[i] = speed;
+    mid[i] = (min + max) / 2;
+    amp[i] = (max - min) / 2;
+    value[i] = mid[i] + amp[i] * (float)Math.sin(phase + speed * t);
+    return i;
+  }
+
+  //work out every wave at some time, in frames. this is done in doubles as
+  //speed * t gets too big for a float to keep the phase accurate in long shows
+  public void set_time(double t) {
+    this.t = t;
+    for (int i = 0; i < size; i++) {
+      value[i] = mid[i] + amp[i] * (float)Math.sin(phase[i] + speed[i] * t);
+    }
+  }
+
+  public double get_time() {
+    return t;
+  }
+
+  //get the value of a wave
+  public float get(int i) {
+    return value[i];
+  }
+}
@@ -0,0 +1,117 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import processing.core.PApplet;
+
+//saves snapshots in the background. Taking a snapshot only copies the frame
+//and the text of the scene, which is quick, into a job for a worker thread
+//that does the slow part - writing the text, adding the scene to the
+//SceneLibrary, encoding the image and exporting the vector files - so the
+//sketch keeps drawing meanwhile. Only a few jobs can wait at once, and any
+//more are turned away rather than holding up the sketch or piling up frames
+//in memory.
+public class SnapshotQueue implements GridConstants {
+  private static PApplet parent;
+  private static ThreadPoolExecutor worker;
+  //what happened to the last snapshot, for the delta info box
+  private static volatile String last = "none yet";
+
+  public static void init(PApplet app) {
+    parent = app;
+    if (worker != null) {
+      return;
+    }
+    worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+      new ArrayBlockingQueue<Runnable>(SNAPSHOT_QUEUE_SIZE), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "snapshot");
+        t.setDaemon(true);
+        return t;
+      }
+    }
+    );
+  }
+
+  //everything needed to save one snapshot, none of which changes once made
+  private static class Job implements Runnable {
+    private final String stamp, txt_name, lib_name, img_name, ps_name, svg_name;
+    private final String[] text;
+    private final Scene scene;
+    private final int[] pixels;
+    private final int w, h;
+
+    Job(String stamp, String txt_name, String lib_name, String img_name, String ps_name, String svg_name, 
+      String[] text, Scene scene, int[] pixels, int w, int h) {
+      this.stamp = stamp;
+      this.txt_name = txt_name;
+      this.lib_name = lib_name;
+      this.img_name = img_name;
+      this.ps_name = ps_name;
+      this.svg_name = svg_name;
+      this.text = text;
+      this.scene = scene;
+      this.pixels = pixels;
+      this.w = w;
+      this.h = h;
+    }
+
+    public void run() {
+      long start = System.nanoTime();
+      try {
+        PApplet.saveStrings(new File(txt_name), text);
+        SceneLibrary.append(new File(lib_name), scene);
+        if (pixels != null) {
+          BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+          img.setRGB(0, 0, w, h, pixels, 0, w);
+          ImageIO.write(img, "png", new File(img_name));
+          VectorExporter.write(scene, ps_name);
+          VectorExporter.write(scene, svg_name);
+        }
+        last = String.format("%s saved in %.0fms", stamp, (System.nanoTime() - start) / 1e6);
+      } 
+      catch (Exception ex) {
+        //a snapshot that worked shows in the delta info box, but one that
+        //failed is worth saying so about
+        last = String.format("%s failed: %s", stamp, ex);
+        parent.println("snapshot " + last);
+      }
+    }
+  }
+
+  //take a snapshot, named with a prefix for the text and one for the images
+  //and a timestamp. If sav_img is set the frame on screen is saved as a png
+  //and the scene is exported as postscript and svg. Must be called from the
+  //animation thread, between frames
+  public static void submit(String txt_prefix, String img_prefix, String[] text, Scene scene, boolean sav_img) {
+    String stamp = new SimpleDateFormat("yyyy_MM_dd_HHmmss").format(Calendar.getInstance().getTime());
+    int[] pixels = null;
+    if (sav_img) {
+      parent.loadPixels();
+      pixels = parent.pixels.clone();
+    }
+    String txt_name = parent.sketchPath("data/" + txt_prefix + "_" + stamp + ".txt");
+    String img_name = parent.sketchPath("data/" + img_prefix + "_" + stamp);
+    String lib_name = parent.sketchPath("data/" + SCENE_LIBRARY);
+    Job job = new Job(stamp, txt_name, lib_name, img_name + ".png", img_name + ".ps", img_name + ".svg", 
+      text, scene, pixels, parent.pixelWidth, parent.pixelHeight);
+    try {
+      worker.execute(job);
+      parent.println(String.format("saving as %s", txt_name));
+    } 
+    catch (RejectedExecutionException ex) {
+      parent.println(String.format("too many snapshots waiting, skipping %s", stamp));
+    }
+  }
+
+  //the number of snapshots being saved and how the last one went
+  public static String get_info() {
+    return String.format("snapshots: %d pending, last %s", worker.getQueue().size() + worker.getActiveCount(), last);
+  }
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+//draws the screen in tiles, using a pool of threads. While the TileRenderer
+//is recording, every grid drawn to the screen (whether ContainedGrids or the
+//layers of an AutoGrid) is recorded instead. Then every tile draws all of the
+//recorded grids in order, with its own graphics and its own set of grids, so
+//tiles can be drawn at the same time. Each tile starts with the same black
+//background as the screen, so when the tiles are put back on the screen they
+//look just like the grids being drawn there directly.
+public class TileRenderer implements GridConstants {
+  private static PApplet parent;
+  public static boolean enabled;
+  private static boolean recording;
+  private static Scene scene;
+  private static Tile[] tiles;
+  private static ExecutorService pool;
+  private static int threads;
+  //time taken drawing tiles, smoothed over a few frames
+  private static float millis;
+
+  public static void init(PApplet app) {
+    parent = app;
+    enabled = TILES_ENABLED;
+    recording = false;
+    scene = new Scene(parent.width, parent.height);
+    tiles = new Tile[TILE_COLUMNS * TILE_ROWS];
+    for (int i = 0; i < TILE_COLUMNS; i++) {
+      for (int j = 0; j < TILE_ROWS; j++) {
+        int left = i * parent.width / TILE_COLUMNS;
+        int top = j * parent.height / TILE_ROWS;
+        int right = (i + 1) * parent.width / TILE_COLUMNS;
+        int bottom = (j + 1) * parent.height / TILE_ROWS;
+        tiles[i * TILE_ROWS + j] = new Tile(parent.createGraphics(right - left, bottom - top), left, top);
+      }
+    }
+    set_threads(Runtime.getRuntime().availableProcessors());
+  }
+
+  //use a new pool with some number of threads
+  private static void set_threads(int n) {
+    if (pool != null) {
+      pool.shutdown();
+    }
+    threads = n;
+    millis = 0;
+    //daemon threads, so that they don't keep the sketch running
+    pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "tile renderer");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  //go through 1, 2, 4... threads up to the number of processors, so that the
+  //time taken can be compared
+  public static void cycle_threads() {
+    int n = threads * 2;
+    set_threads(n > Runtime.getRuntime().availableProcessors() ? 1 : n);
+    parent.println(String.format("drawing tiles with %d threads", threads));
+  }
+
+  public static boolean is_recording() {
+    return recording;
+  }
+
+  //start recording grids drawn to the screen
+  public static void begin() {
+    scene.clear();
+    recording = true;
+  }
+
+  static void record(int type, float x, float y, float th, float gap, float stroke, int c) {
+    scene.add(type, x, y, th, gap, stroke, c);
+  }
+
+  //stop recording, draw every tile and put them on the screen
+  public static void end() {
+    recording = false;
+    long start = System.nanoTime();
+    try {
+      pool.invokeAll(Arrays.asList(tiles));
+    } 
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    float ms = (System.nanoTime() - start) / 1e6f;
+    millis = millis == 0 ? ms : 0.9f * millis + 0.1f * ms;
+    for (Tile t : tiles) {
+      parent.image(t.g, t.left, t.top);
+    }
+  }
+
+  //a summary of the tiled drawing for the delta info box
+  public static String get_info() {
+    return String.format("tiles %s, %d threads, %.1fms", enabled ? "on" : "off", threads, millis);
+  }
+
+  //a tile of the screen, with its own graphics and set of grids
+  private static class Tile implements Callable<Object> {
+    PGraphics g;
+    int left, top;
+    GridDrawer[] set;
+
+    Tile(PGraphics g, int left, int top) {
+      this.g = g;
+      this.left = left;
+      this.top = top;
+      set = GridDrawer.make_set(g, left, top);
+    }
+
+    //draw every recorded grid, in screen coordinates
+    public Object call() {
+      g.beginDraw();
+      g.background(0);
+      g.translate(-left, -top);
+      scene.draw(set);
+      g.endDraw();
+      return null;
+    }
+  }
+}
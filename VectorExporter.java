@@ -0,0 +1,400 @@
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static processing.core.PApplet.degrees;
+import static processing.core.PApplet.dist;
+import static processing.core.PApplet.max;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+//writes a scene as a PostScript or SVG file. This used to be done by piping
+//the serialised scene through convert.py, which only knew about half of the
+//grids and took a good while to start up. Here the grids trace themselves
+//into a sink which writes the file as it goes, exactly as they are drawn on
+//screen, so every type of grid works. Lines are clipped to the page and arcs
+//which can't be seen are left out, so a file only holds what is visible.
+public class VectorExporter implements GridConstants {
+  //how many segments are put in one path before it is stroked. some
+  //PostScript interpreters have a limit on the length of a path
+  private static final int PS_PATH_SEGMENTS = 1000;
+  //how many characters are gathered before they are written out
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  //write a scene to a file, as SVG if its name ends in .svg and otherwise as
+  //PostScript. The page is the size of the scene's screen, with one point for
+  //every pixel
+  public static void write(Scene scene, String filename) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      PageSink sink = filename.endsWith(".svg") ? new SvgSink(channel) : new PsSink(channel);
+      sink.width = scene.width;
+      sink.height = scene.height;
+      //a set of grids which only trace, and never draw anything
+      GridDrawer[] set = GridDrawer.make_screen_set(null, scene.width, scene.height);
+      sink.header();
+      for (int i = 0; i < scene.size(); i++) {
+        if (scene.type[i] == TRIANGLERADIAL) {
+          trace_wedges(sink, scene, i);
+        } else {
+          sink.begin(scene.c[i], scene.stroke[i], false);
+          sink.transform(scene.x[i], scene.y[i], scene.th[i]);
+          set[scene.type[i]].trace_page(sink, scene.x[i], scene.y[i], scene.th[i], scene.gap[i]);
+          sink.end();
+        }
+      }
+      sink.footer();
+      sink.drain();
+    }
+    catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  //TriangleRadial is drawn as filled triangles, rather than traced, so this
+  //works them out in the same way as its draw_grid
+  private static void trace_wedges(PageSink sink, Scene scene, int k) {
+    float x = scene.x[k], y = scene.y[k], stroke = scene.stroke[k], gap = scene.gap[k];
+    float r = scene.radius(x, y);
+    float stroke_up = stroke * r / (float)sqrt(stroke * stroke + scene.width * scene.width / 4f);
+    float angle_gap = PI / (int)gap;
+    sink.begin(scene.c[k], 0, true);
+    for (int i = 0; i < gap * 2; i++) {
+      sink.transform(x, y, scene.th[k] + (i + 1) * angle_gap);
+      sink.triangle(0, 0, stroke_up * 2, r, -stroke_up * 2, r);
+    }
+    sink.end();
+  }
+
+  //a sink writing a page. it puts geometry in the frame of a grid onto the
+  //page, clips it and hands it on to the format, buffering what is written
+  private static abstract class PageSink implements LineSink {
+    int width, height;
+    protected StringBuilder out = new StringBuilder(BUFFER_SIZE);
+    private FileChannel channel;
+    private ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    //transformation of the grid being traced
+    private float x, y, th, cos_th = 1, sin_th = 0;
+    //how far outside the page a line can be and still show
+    private float margin;
+
+    PageSink(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    abstract void header();
+    abstract void footer();
+    //start and end a grid with some colour, stroked with some weight or filled
+    abstract void start(int c, float stroke, boolean fill);
+    abstract void end();
+    //write a line, an arc and a triangle on the page
+    abstract void page_line(float x1, float y1, float x2, float y2);
+    abstract void page_arc(float x, float y, float r, float start, float stop);
+    abstract void page_triangle(float x1, float y1, float x2, float y2, float x3, float y3);
+
+    void begin(int c, float stroke, boolean fill) {
+      margin = stroke;
+      start(c, stroke, fill);
+    }
+
+    void transform(float x, float y, float th) {
+      this.x = x;
+      this.y = y;
+      this.th = th;
+      cos_th = (float)cos(th);
+      sin_th = (float)sin(th);
+    }
+
+    //clip the line to the page (Liang-Barsky), leaving it out if none of it
+    //is on the page
+    public void line(float x1, float y1, float x2, float y2) {
+      float px = x + x1 * cos_th - y1 * sin_th, py = y + x1 * sin_th + y1 * cos_th;
+      float qx = x + x2 * cos_th - y2 * sin_th, qy = y + x2 * sin_th + y2 * cos_th;
+      float dx = qx - px, dy = qy - py;
+      float[] p = {-dx, dx, -dy, dy};
+      float[] q = {px + margin, width + margin - px, py + margin, height + margin - py};
+      float t0 = 0, t1 = 1;
+      for (int i = 0; i < 4; i++) {
+        if (p[i] == 0) {
+          if (q[i] < 0) {
+            return;
+          }
+        } else {
+          float t = q[i] / p[i];
+          if (p[i] < 0) {
+            t0 = Math.max(t0, t);
+          } else {
+            t1 = Math.min(t1, t);
+          }
+        }
+      }
+      if (t0 > t1) {
+        return;
+      }
+      page_line(px + t0 * dx, py + t0 * dy, px + t1 * dx, py + t1 * dy);
+      drain_if_full();
+    }
+
+    //leave out an arc whose circle misses the page, or goes all the way
+    //round it
+    public void arc(float ax, float ay, float r, float start, float stop) {
+      float cx = x + ax * cos_th - ay * sin_th;
+      float cy = y + ax * sin_th + ay * cos_th;
+      float nx = Math.max(-margin, Math.min(width + margin, cx));
+      float ny = Math.max(-margin, Math.min(height + margin, cy));
+      if (dist(cx, cy, nx, ny) > r + margin) {
+        return;
+      }
+      float far = max(new float[] {dist(cx, cy, 0, 0), dist(cx, cy, width, 0),
+        dist(cx, cy, 0, height), dist(cx, cy, width, height)});
+      if (far < r - margin) {
+        return;
+      }
+      page_arc(cx, cy, r, start + th, stop + th);
+      drain_if_full();
+    }
+
+    void triangle(float x1, float y1, float x2, float y2, float x3, float y3) {
+      page_triangle(x + x1 * cos_th - y1 * sin_th, y + x1 * sin_th + y1 * cos_th,
+        x + x2 * cos_th - y2 * sin_th, y + x2 * sin_th + y2 * cos_th,
+        x + x3 * cos_th - y3 * sin_th, y + x3 * sin_th + y3 * cos_th);
+      drain_if_full();
+    }
+
+    //write a number with at most two decimals, which is far finer than can
+    //be seen, followed by a space. String.format is slow, and would use a
+    //comma in some locales
+    protected void num(float v) {
+      int n = Math.round(v * 100);
+      if (n < 0) {
+        out.append('-');
+        n = -n;
+      }
+      out.append(n / 100);
+      int f = n % 100;
+      if (f != 0) {
+        out.append('.');
+        if (f < 10) {
+          out.append('0');
+        }
+        out.append(f % 10 == 0 ? f / 10 : f);
+      }
+      out.append(' ');
+    }
+
+    //the components of a colour out of 1
+    protected void rgb(int c) {
+      num(((c >> 16) & 0xff) / 255f);
+      num(((c >> 8) & 0xff) / 255f);
+      num((c & 0xff) / 255f);
+    }
+
+    private void drain_if_full() {
+      if (out.length() >= BUFFER_SIZE - 256) {
+        drain();
+      }
+    }
+
+    //write everything so far to the file. Everything written is ascii, so
+    //the characters are put straight into bytes
+    void drain() {
+      try {
+        for (int i = 0; i < out.length(); i++) {
+          if (!bytes.hasRemaining()) {
+            write_bytes();
+          }
+          bytes.put((byte)out.charAt(i));
+        }
+        write_bytes();
+        out.setLength(0);
+      }
+      catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private void write_bytes() throws IOException {
+      bytes.flip();
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      bytes.clear();
+    }
+  }
+
+  //PostScript has no alpha, but ghostscript has its own operators for it. a
+  //translucent grid is opaque in other interpreters
+  private static class PsSink extends PageSink {
+    private int segments;
+    private boolean fill;
+
+    PsSink(FileChannel channel) {
+      super(channel);
+    }
+
+    void header() {
+      out.append("%!PS-Adobe-3.0\n%%BoundingBox: 0 0 ").append(width).append(' ').append(height);
+      out.append("\n%%Pages: 1\n%%EndComments\n%%Page: 1 1\n");
+      out.append("<< /PageSize [").append(width).append(' ').append(height).append("] >> setpagedevice\n");
+      out.append("/m {moveto} bind def\n/l {lineto} bind def\n/a {arc} bind def\n");
+      out.append("/alpha {/.setstrokeconstantalpha where {pop dup .setstrokeconstantalpha .setfillconstantalpha} {pop} ifelse} bind def\n");
+      //processing's y axis points down
+      out.append("0 ").append(height).append(" translate 1 -1 scale\n");
+      out.append("1 setlinecap 1 setlinejoin\n");
+      out.append("0 0 ").append(width).append(' ').append(height).append(" rectclip\n");
+      out.append("0 0 0 setrgbcolor 0 0 ").append(width).append(' ').append(height).append(" rectfill\n");
+    }
+
+    void footer() {
+      out.append("showpage\n%%EOF\n");
+    }
+
+    void start(int c, float stroke, boolean fill) {
+      this.fill = fill;
+      segments = 0;
+      rgb(c);
+      out.append("setrgbcolor ");
+      num((c >>> 24) / 255f);
+      out.append("alpha ");
+      num(stroke);
+      out.append("setlinewidth newpath\n");
+    }
+
+    void end() {
+      out.append(fill ? "fill\n" : "stroke\n");
+    }
+
+    //stroke the path every so often to keep it short
+    private void count() {
+      if (++segments % PS_PATH_SEGMENTS == 0) {
+        end();
+      }
+    }
+
+    void page_line(float x1, float y1, float x2, float y2) {
+      num(x1);
+      num(y1);
+      out.append("m ");
+      num(x2);
+      num(y2);
+      out.append("l\n");
+      count();
+    }
+
+    //arc joins the current point to its start, so move there first
+    void page_arc(float x, float y, float r, float start, float stop) {
+      num(x + r * (float)cos(start));
+      num(y + r * (float)sin(start));
+      out.append("m ");
+      num(x);
+      num(y);
+      num(r);
+      num(degrees(start));
+      num(degrees(stop));
+      out.append("a\n");
+      count();
+    }
+
+    void page_triangle(float x1, float y1, float x2, float y2, float x3, float y3) {
+      num(x1);
+      num(y1);
+      out.append("m ");
+      num(x2);
+      num(y2);
+      out.append("l ");
+      num(x3);
+      num(y3);
+      out.append("l closepath\n");
+      count();
+    }
+  }
+
+  //each grid is one path. SVG arcs are given by their end points, so arcs are
+  //split into halves at most, which are never ambiguous
+  private static class SvgSink extends PageSink {
+    SvgSink(FileChannel channel) {
+      super(channel);
+    }
+
+    void header() {
+      out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width).append("\" height=\"").append(height);
+      out.append("\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">\n");
+      out.append("<rect width=\"").append(width).append("\" height=\"").append(height).append("\" fill=\"black\"/>\n");
+      out.append("<g stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+    }
+
+    void footer() {
+      out.append("</g>\n</svg>\n");
+    }
+
+    void start(int c, float stroke, boolean fill) {
+      String paint = fill ? "fill" : "stroke";
+      out.append("<path ").append(fill ? "stroke=\"none\"" : "fill=\"none\"");
+      out.append(' ').append(paint).append("=\"#").append(String.format("%06x", c & 0xffffff)).append('"');
+      if ((c >>> 24) != 0xff) {
+        out.append(' ').append(paint).append("-opacity=\"");
+        num((c >>> 24) / 255f);
+        out.setLength(out.length() - 1);
+        out.append('"');
+      }
+      if (!fill) {
+        out.append(" stroke-width=\"");
+        num(stroke);
+        out.setLength(out.length() - 1);
+        out.append('"');
+      }
+      out.append(" d=\"");
+    }
+
+    void end() {
+      out.append("\"/>\n");
+    }
+
+    void page_line(float x1, float y1, float x2, float y2) {
+      out.append('M');
+      num(x1);
+      num(y1);
+      out.append('L');
+      num(x2);
+      num(y2);
+    }
+
+    void page_arc(float x, float y, float r, float start, float stop) {
+      int n = (int)Math.ceil(Math.abs(stop - start) / PI - 1e-4f);
+      float step = (stop - start) / Math.max(1, n);
+      out.append('M');
+      num(x + r * (float)cos(start));
+      num(y + r * (float)sin(start));
+      for (int i = 1; i <= n; i++) {
+        float a = start + i * step;
+        out.append('A');
+        num(r);
+        num(r);
+        out.append(step > 0 ? "0 0 1 " : "0 0 0 ");
+        num(x + r * (float)cos(a));
+        num(y + r * (float)sin(a));
+      }
+    }
+
+    void page_triangle(float x1, float y1, float x2, float y2, float x3, float y3) {
+      out.append('M');
+      num(x1);
+      num(y1);
+      out.append('L');
+      num(x2);
+      num(y2);
+      num(x3);
+      num(y3);
+      out.append('Z');
+    }
+  }
+}
@@ -8,12 +8,26 @@ moire_draggable by Izaak van Dongen
   to change grid parameters. use the green button to clone a grid, the red to remove.
  r to reset
  p to toggle auto mode
+ in auto mode, hold shift with a grid key to add a moving layer of that grid
+ in auto mode, , and . to jump back and forward, j to save the show to data
+ u to choose a saved show to play
  aq, sw, de for delta manipulation
  space to toggle delta info box
+ v to toggle clipping grids to the screen
+ b to toggle batching grids into one shape
+ x to toggle working out line and polar grids pixel by pixel
+ t to toggle drawing in tiles on several threads, y to change the number of threads
  enter to toggle ui
  click on a draggable element and then use arrow keys for finer manipulation
  use f to serialise
- use i to serialise with image and postscript file - this hasn't been tested much, use at own risk
+ use i to serialise with image, postscript and svg file
+ o to start and stop recording every frame
+ k to toggle only drawing when something changes (outside auto mode)
+ g to toggle lowering the resolution of grids while dragging on heavy scenes
+ m to toggle previewing just the moire between grids while dragging, and in auto mode
+ c to change how grids blend where they cross: over each other, average, add, multiply or difference
+ h to toggle the performance overlay
+ l to start and stop logging performance to csv files in data
 */
 
 //note that a very large portion of the code for this sketch is .java. This is